@@ -19,11 +19,12 @@
  */
 package org.xhtmlrenderer.context;
 
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RecursiveTask;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -32,6 +33,7 @@ import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.extend.AttributeResolver;
 import org.xhtmlrenderer.css.extend.lib.DOMTreeResolver;
 import org.xhtmlrenderer.css.newmatch.CascadedStyle;
+import org.xhtmlrenderer.css.newmatch.CompiledStylesheetSet;
 import org.xhtmlrenderer.css.newmatch.PageInfo;
 import org.xhtmlrenderer.css.parser.PropertyValue;
 import org.xhtmlrenderer.css.sheet.FontFaceRule;
@@ -41,7 +43,9 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.ParallelSupport;
 import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
 
@@ -66,6 +70,8 @@ public class StyleReference {
 
     /** */
     private UserAgentCallback _uac;
+
+    private boolean _parallelParsing = Configuration.isTrue("xr.css.parallel-parsing", false);
     
     public StyleReference(UserAgentCallback userAgent) {
         _uac = userAgent;
@@ -92,6 +98,11 @@ public class StyleReference {
     }
     
     private List<Stylesheet> readAndParseAll(List<StylesheetInfo> infos, String medium) {
+        if (_parallelParsing) {
+            return ParallelSupport.getPool().invoke(
+                    new ParseTask(infos, medium, ParallelSupport.ErrorContext.capture()));
+        }
+
         List<Stylesheet> result = new ArrayList<Stylesheet>(infos.size() + 15);
         for (Iterator<StylesheetInfo> i = infos.iterator(); i.hasNext(); ) {
             StylesheetInfo info = i.next();
@@ -113,6 +124,83 @@ public class StyleReference {
         return result;
     }
     
+    /**
+     * Loads and parses a list of stylesheets, and their imports, on a
+     * fork/join pool. The result is in the same (cascade) order as
+     * {@link #readAndParseAll(List, String)} would return.
+     */
+    private final class ParseTask extends RecursiveTask<List<Stylesheet>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<StylesheetInfo> _infos;
+        private final String _medium;
+        private final ParallelSupport.ErrorContext _errorContext;
+
+        ParseTask(List<StylesheetInfo> infos, String medium, ParallelSupport.ErrorContext errorContext) {
+            _infos = infos;
+            _medium = medium;
+            _errorContext = errorContext;
+        }
+
+        protected List<Stylesheet> compute() {
+            ParallelSupport.ErrorContext previous = _errorContext.install();
+            try {
+                return parse();
+            } finally {
+                previous.restore();
+            }
+        }
+
+        private List<Stylesheet> parse() {
+            List<StylesheetInfo> applicable = new ArrayList<StylesheetInfo>(_infos.size());
+            for (StylesheetInfo info : _infos) {
+                if (info.appliesToMedia(_medium)) {
+                    applicable.add(info);
+                }
+            }
+
+            List<Stylesheet> result = new ArrayList<Stylesheet>(applicable.size() + 15);
+            if (applicable.size() == 1) {
+                StylesheetInfo info = applicable.get(0);
+                Stylesheet sheet = info.getStylesheet();
+
+                if (sheet == null) {
+                    sheet = _stylesheetFactory.getStylesheet(info);
+                }
+
+                if (sheet.getImportRules().size() > 0) {
+                    result.addAll(new ParseTask(sheet.getImportRules(), _medium, _errorContext).compute());
+                }
+
+                result.add(sheet);
+            } else if (applicable.size() > 1) {
+                List<ParseTask> tasks = new ArrayList<ParseTask>(applicable.size());
+                for (StylesheetInfo info : applicable) {
+                    tasks.add(new ParseTask(Collections.singletonList(info), _medium, _errorContext));
+                }
+                invokeAll(tasks);
+                for (ParseTask task : tasks) {
+                    result.addAll(task.join());
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Whether linked and imported stylesheets are loaded and parsed
+     * concurrently. The user agent must then be safe for use by several
+     * threads.
+     */
+    public void setParallelParsing(boolean parallelParsing) {
+        _parallelParsing = parallelParsing;
+    }
+
+    public boolean isParallelParsing() {
+        return _parallelParsing;
+    }
+    
     public boolean isHoverStyled(Element e) {
         return _matcher.isHoverStyled(e);
     }
@@ -186,6 +274,7 @@ public class StyleReference {
     
     public void flushAllStyleSheets() {
         _stylesheetFactory.getUac().getStylesheetCache().flushCachedStylesheets();
+        CompiledStylesheetSet.flushCache();
     }
 
     /**
@@ -229,7 +318,7 @@ public class StyleReference {
                 } else {
                     refs.get(i).setUri(_uac.getBaseURL() + "#inline_style_" + (++inlineStyleCount));
                     Stylesheet sheet = _stylesheetFactory.parse(
-                            new StringReader(refs.get(i).getContent()), refs.get(i));
+                            refs.get(i).getContent(), refs.get(i));
                     refs.get(i).setStylesheet(sheet);
                     refs.get(i).setUri(null);
                 }
@@ -254,6 +343,14 @@ public class StyleReference {
     public List<FontFaceRule> getFontFaceRules() {
         return _matcher.getFontFaceRules();
     }
+
+    /**
+     * Whether the style of an element may depend on its preceding siblings
+     * in the current document's stylesheets.
+     */
+    public boolean isSiblingDependent() {
+        return _matcher == null || _matcher.isSiblingDependent();
+    }
     
     public void setUserAgentCallback(UserAgentCallback userAgentCallback) {
         _uac = userAgentCallback;
@@ -21,9 +21,8 @@ package org.xhtmlrenderer.context;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.logging.Level;
 
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
@@ -35,35 +34,51 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.resource.CSSResource;
+import org.xhtmlrenderer.util.IOUtil;
 import org.xhtmlrenderer.util.XRLog;
 
 /**
- * A Factory class for Cascading Style Sheets. Sheets are parsed using a single
- * parser instance for all sheets. Sheets are cached by URI using a LRU test,
- * but timestamp of file is not checked.
+ * A Factory class for Cascading Style Sheets. Sheets are parsed using one
+ * parser instance per thread, so several sheets can be parsed at the same
+ * time. Sheets are cached by URI using a LRU test, but timestamp of file is
+ * not checked.
  *
  * @author Torbjoern Gannholm
  */
 public class StylesheetFactoryImpl implements StylesheetFactory {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
 	/**
      * the UserAgentCallback to resolve uris
      */
     private UserAgentCallback _userAgentCallback;
-    private CSSParser _cssParser;
+    private volatile boolean _supportCMYKColors;
+
+    private final CSSErrorHandler _errorHandler = new CSSErrorHandler() {
+        public void error(String uri, String message) {
+            XRLog.cssParse(Level.WARNING, "(" + uri + ") " + message);
+        }
+    };
+
+    private final ThreadLocal<CSSParser> _cssParsers = new ThreadLocal<CSSParser>() {
+        protected CSSParser initialValue() {
+            return new CSSParser(_errorHandler);
+        }
+    };
 
     public StylesheetFactoryImpl(UserAgentCallback userAgentCallback) {
         _userAgentCallback = userAgentCallback;
-        _cssParser = new CSSParser(new CSSErrorHandler() {
-            public void error(String uri, String message) {
-                XRLog.cssParse(Level.WARNING, "(" + uri + ") " + message);
-            }
-        });
     }
 
-    public synchronized Stylesheet parse(Reader reader, StylesheetInfo info) {
+    private CSSParser getParser() {
+        CSSParser parser = _cssParsers.get();
+        parser.setSupportCMYKColors(_supportCMYKColors);
+        return parser;
+    }
+
+    public Stylesheet parse(Reader reader, StylesheetInfo info) {
         try {
-        	Stylesheet s1 = _cssParser.parseStylesheet(info.getUri(), info.getOrigin(), reader);
+        	Stylesheet s1 = getParser().parseStylesheet(info.getUri(), info.getOrigin(), reader);
         	_userAgentCallback.getStylesheetCache().putStylesheet(info.getUri(), s1);
             return s1; 
         } catch (IOException e) {
@@ -73,6 +88,12 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         }
     }
 
+    public Stylesheet parse(CharSequence css, StylesheetInfo info) {
+        Stylesheet s1 = getParser().parseStylesheet(info.getUri(), info.getOrigin(), css);
+        _userAgentCallback.getStylesheetCache().putStylesheet(info.getUri(), s1);
+        return s1;
+    }
+
     /**
      * @return Returns null if uri could not be loaded
      */
@@ -82,11 +103,12 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         // since the null resource stream is wrapped in a BufferedInputStream
         InputStream is = cr.getResourceInputStream();
         try {
-            Stylesheet s1 = parse(new InputStreamReader(is, "UTF-8"), info);
+            // Decode the whole sheet at once so the parser can scan it in place
+            Stylesheet s1 = parse(IOUtil.readChars(is, UTF_8), info);
             return s1;
-        } catch (UnsupportedEncodingException e) {
-            // Shouldn't happen
-            throw new RuntimeException(e.getMessage(), e);
+        } catch (IOException e) {
+            XRLog.cssParse(Level.WARNING, "Couldn't parse stylesheet at URI " + info.getUri() + ": " + e.getMessage(), e);
+            return new Stylesheet(info.getUri(), info.getOrigin());
         } finally {
             if (is != null) {
                 try {
@@ -98,8 +120,8 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         }
     }
 
-    public synchronized Ruleset parseStyleDeclaration(CSSOrigin origin, String styleDeclaration) {
-        return _cssParser.parseDeclaration(origin, styleDeclaration);
+    public Ruleset parseStyleDeclaration(CSSOrigin origin, String styleDeclaration) {
+        return getParser().parseDeclaration(origin, styleDeclaration);
     }
 
     public Stylesheet getStylesheet(StylesheetInfo info) 
@@ -126,6 +148,6 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     }
     
     public void setSupportCMYKColors(boolean b) {
-        _cssParser.setSupportCMYKColors(b);
+        _supportCMYKColors = b;
     }
 }
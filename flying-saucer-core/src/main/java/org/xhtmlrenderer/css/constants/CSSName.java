@@ -1572,6 +1572,12 @@ public enum CSSName {
      */
     private static final Map<String, CSSName> ALL_PRIMITIVE_PROPERTY_NAMES = new TreeMap<>();
 
+    /**
+     * Lookup table for {@link #getByPropertyName(String)}, the maps above are
+     * kept for the sorted listings
+     */
+    private static final PerfectHashTable<CSSName> PROPERTY_NAME_TABLE;
+
 
     public final static CSSSideProperties MARGIN_SIDE_PROPERTIES =
             new CSSSideProperties(
@@ -1732,7 +1738,7 @@ public enum CSSName {
      */
     public static CSSName getByPropertyName(String propName) {
 
-        return ALL_PROPERTY_NAMES.get(propName);
+        return PROPERTY_NAME_TABLE.get(propName);
     }
 
     public static CSSName getByID(int id) {
@@ -1749,6 +1755,8 @@ public enum CSSName {
     			ALL_PRIMITIVE_PROPERTY_NAMES.put(nm.propName, nm);
     		}
     	}
+
+    	PROPERTY_NAME_TABLE = new PerfectHashTable<>(ALL_PROPERTY_NAMES);
     }
 
     static {
@@ -215,6 +215,7 @@ public enum IdentValue implements FSDerivedValue
     public final int fsId;
 
     private static final Map<String, IdentValue> ALL_IDENT_VALUES = new HashMap<>(values().length);
+    private static final PerfectHashTable<IdentValue> IDENT_VALUE_TABLE;
 
     private IdentValue(String ident) 
     {
@@ -241,7 +242,7 @@ public enum IdentValue implements FSDerivedValue
      * @return see desc.
      */
     public static IdentValue getByIdentString(String ident) {
-        IdentValue val = ALL_IDENT_VALUES.get(ident);
+        IdentValue val = IDENT_VALUE_TABLE.get(ident);
         if (val == null) {
             throw new XRRuntimeException("Ident named " + ident + " has no IdentValue instance assigned to it.");
         }
@@ -249,11 +250,11 @@ public enum IdentValue implements FSDerivedValue
     }
 
     public static boolean looksLikeIdent(String ident) {
-        return ALL_IDENT_VALUES.containsKey(ident);
+        return IDENT_VALUE_TABLE.get(ident) != null;
     }
 
     public static IdentValue fsValueOf(String ident) {
-        return ALL_IDENT_VALUES.get(ident);
+        return IDENT_VALUE_TABLE.get(ident);
     }
 
     public static int getIdentCount() {
@@ -265,6 +266,8 @@ public enum IdentValue implements FSDerivedValue
     	{
     		ALL_IDENT_VALUES.put(id.ident, id);
     	}
+
+    	IDENT_VALUE_TABLE = new PerfectHashTable<>(ALL_IDENT_VALUES);
     }
     
     /*
@@ -0,0 +1,121 @@
+package org.xhtmlrenderer.css.constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, collision free string lookup table for a fixed set of keys
+ * (the CSS property names and identifiers). The table is built once, when
+ * the owning class is initialized, using the "hash and displace" scheme: keys
+ * are first spread over a small number of buckets and each bucket is then
+ * given a displacement value that places all its keys in distinct free slots.
+ * A lookup is thus two hash computations, one array read and a single
+ * <code>equals()</code>, however many keys there are.
+ */
+final class PerfectHashTable<V> {
+    private final int[] _displacements;
+    private final String[] _keys;
+    private final Object[] _values;
+
+    PerfectHashTable(Map<String, V> entries) {
+        int count = Math.max(entries.size(), 1);
+
+        int bucketCount = Integer.highestOneBit(count);
+        int slotCount = Integer.highestOneBit(count) << 2;
+
+        List<List<String>> buckets = new ArrayList<List<String>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<String>(4));
+        }
+        for (String key : entries.keySet()) {
+            buckets.get(key.hashCode() & (bucketCount - 1)).add(key);
+        }
+
+        int[] bucketOrder = sortBySizeDescending(buckets);
+
+        _displacements = new int[bucketCount];
+        _keys = new String[slotCount];
+        _values = new Object[slotCount];
+
+        int[] slots = new int[count];
+        for (int b : bucketOrder) {
+            List<String> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+
+            int displacement = 0;
+            SEARCH: while (true) {
+                displacement++;
+                if (displacement == 1 << 20) {
+                    throw new IllegalArgumentException("Unable to build a perfect hash for " + bucket);
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    int slot = slot(bucket.get(i).hashCode(), displacement, slotCount);
+                    if (_keys[slot] != null) {
+                        continue SEARCH;
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (slots[j] == slot) {
+                            continue SEARCH;
+                        }
+                    }
+                    slots[i] = slot;
+                }
+                break;
+            }
+
+            _displacements[b] = displacement;
+            for (int i = 0; i < bucket.size(); i++) {
+                String key = bucket.get(i);
+                _keys[slots[i]] = key;
+                _values[slots[i]] = entries.get(key);
+            }
+        }
+    }
+
+    private static int[] sortBySizeDescending(final List<List<String>> buckets) {
+        Integer[] order = new Integer[buckets.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        // Largest buckets first, while there is the most room left
+        Arrays.sort(order, Collections.reverseOrder(new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return buckets.get(i1.intValue()).size() - buckets.get(i2.intValue()).size();
+            }
+        }));
+
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i].intValue();
+        }
+        return result;
+    }
+
+    private static int slot(int hash, int displacement, int slotCount) {
+        int h = (hash ^ displacement) * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & (slotCount - 1);
+    }
+
+    /**
+     * Returns the value stored for <code>key</code> or <code>null</code> if
+     * <code>key</code> is null or not one of the keys of this table.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        if (key == null) {
+            return null;
+        }
+        int hash = key.hashCode();
+        int slot = slot(hash, _displacements[hash & (_displacements.length - 1)], _keys.length);
+        return key.equals(_keys[slot]) ? (V) _values[slot] : null;
+    }
+}
@@ -36,6 +36,7 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
  */
 public interface StylesheetFactory {
     Stylesheet parse(Reader reader, StylesheetInfo info);
+    Stylesheet parse(CharSequence css, StylesheetInfo info);
     Ruleset parseStyleDeclaration(CSSOrigin author, String style);
 
     Stylesheet getStylesheet(StylesheetInfo si);
@@ -0,0 +1,215 @@
+package org.xhtmlrenderer.css.newmatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.xhtmlrenderer.css.sheet.FontFaceRule;
+import org.xhtmlrenderer.css.sheet.MediaRule;
+import org.xhtmlrenderer.css.sheet.PageRule;
+import org.xhtmlrenderer.css.sheet.Ruleset;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * The selectors, page rules and font-face rules of an ordered list of
+ * stylesheets for one medium, sorted into cascade order. A compiled set is
+ * immutable once built and may be shared by any number of {@link Matcher}s,
+ * on any thread, so documents that use the same stylesheets do not have to
+ * sort the rules again.
+ * <p>
+ * Compiled sets are cached by the identity of the stylesheets (in order) and
+ * the medium. Stylesheets must not be modified once they have been compiled.
+ */
+public final class CompiledStylesheetSet {
+    /**
+     * an LRU cache
+     */
+    private static final int DEFAULT_CACHE_SIZE = 16;
+    private static final Map<Key, CompiledStylesheetSet> _cache = new java.util.LinkedHashMap<Key, CompiledStylesheetSet>(
+            DEFAULT_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(
+                java.util.Map.Entry<Key, CompiledStylesheetSet> eldest) {
+            return size() > DEFAULT_CACHE_SIZE;
+        }
+    };
+
+    private final List<Selector> _selectors;
+    private final List<PageRule> _pageRules;
+    private final List<FontFaceRule> _fontFaceRules;
+    private final boolean _siblingDependent;
+
+    private CompiledStylesheetSet(List<Selector> selectors, List<PageRule> pageRules, List<FontFaceRule> fontFaceRules) {
+        _selectors = Collections.unmodifiableList(selectors);
+        _pageRules = Collections.unmodifiableList(pageRules);
+        _fontFaceRules = Collections.unmodifiableList(fontFaceRules);
+
+        boolean siblingDependent = false;
+        for (Selector selector : selectors) {
+            if (selector.isSiblingDependent()) {
+                siblingDependent = true;
+                break;
+            }
+        }
+        _siblingDependent = siblingDependent;
+    }
+
+    /**
+     * Returns the compiled form of <code>stylesheets</code> for
+     * <code>medium</code>, reusing a previously compiled set if the same
+     * stylesheet instances were compiled before in the same order.
+     */
+    public static CompiledStylesheetSet compile(List<Stylesheet> stylesheets, String medium) {
+        Key key = new Key(stylesheets, medium);
+        CompiledStylesheetSet result;
+
+        synchronized (_cache) {
+            result = _cache.get(key);
+        }
+
+        if (result != null) {
+            XRLog.match("Reusing compiled stylesheets with " + result._selectors.size() + " selectors");
+            return result;
+        }
+
+        result = build(stylesheets, medium);
+
+        synchronized (_cache) {
+            CompiledStylesheetSet existing = _cache.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            _cache.put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Discards all cached compiled sets.
+     */
+    public static void flushCache() {
+        synchronized (_cache) {
+            _cache.clear();
+        }
+    }
+
+    private static CompiledStylesheetSet build(List<Stylesheet> stylesheets, String medium) {
+        List<Selector> selectors = new ArrayList<Selector>();
+        List<PageRule> pageRules = new ArrayList<PageRule>();
+        List<FontFaceRule> fontFaceRules = new ArrayList<FontFaceRule>();
+
+        for (Stylesheet stylesheet : stylesheets) {
+            for (Object obj : stylesheet.getContents()) {
+                if (obj instanceof Ruleset) {
+                    selectors.addAll(((Ruleset) obj).getFSSelectors());
+                } else if (obj instanceof PageRule) {
+                    pageRules.add((PageRule) obj);
+                } else if (obj instanceof MediaRule) {
+                    MediaRule mediaRule = (MediaRule) obj;
+                    if (mediaRule.matches(medium)) {
+                        for (Ruleset ruleset : mediaRule.getContents()) {
+                            selectors.addAll(ruleset.getFSSelectors());
+                        }
+                    }
+                }
+            }
+
+            fontFaceRules.addAll(stylesheet.getFontFaceRules());
+        }
+
+        // Both sorts are stable so rules of equal specificity keep their
+        // specification order.
+        Collections.sort(selectors, new Comparator<Selector>() {
+            public int compare(Selector s1, Selector s2) {
+                return compareLongs(s1.getSpecificity(), s2.getSpecificity());
+            }
+        });
+        Collections.sort(pageRules, new Comparator<PageRule>() {
+            public int compare(PageRule p1, PageRule p2) {
+                return compareLongs(p1.getSpecificity(), p2.getSpecificity());
+            }
+        });
+
+        XRLog.match("Compiled stylesheets with " + selectors.size() + " selectors");
+        return new CompiledStylesheetSet(selectors, pageRules, fontFaceRules);
+    }
+
+    private static int compareLongs(long l1, long l2) {
+        return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+    }
+
+    /**
+     * The selectors in cascade order (increasing specificity, then
+     * specification order).
+     */
+    public List<Selector> getSelectors() {
+        return _selectors;
+    }
+
+    /**
+     * The page rules in cascade order.
+     */
+    public List<PageRule> getPageRules() {
+        return _pageRules;
+    }
+
+    public List<FontFaceRule> getFontFaceRules() {
+        return _fontFaceRules;
+    }
+
+    /**
+     * Whether the style of an element may depend on its preceding siblings
+     * (some selector uses the <code>+</code> combinator).
+     */
+    public boolean isSiblingDependent() {
+        return _siblingDependent;
+    }
+
+    /**
+     * Identifies a list of stylesheets by instance rather than by content.
+     */
+    private static final class Key {
+        private final Stylesheet[] _stylesheets;
+        private final String _medium;
+        private final int _hashCode;
+
+        Key(List<Stylesheet> stylesheets, String medium) {
+            _stylesheets = stylesheets.toArray(new Stylesheet[stylesheets.size()]);
+            _medium = medium;
+
+            int hash = medium == null ? 0 : medium.hashCode();
+            for (int i = 0; i < _stylesheets.length; i++) {
+                hash = 31 * hash + System.identityHashCode(_stylesheets[i]);
+            }
+            _hashCode = hash;
+        }
+
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (_hashCode != other._hashCode || _stylesheets.length != other._stylesheets.length) {
+                return false;
+            }
+            if (_medium == null ? other._medium != null : !_medium.equals(other._medium)) {
+                return false;
+            }
+            for (int i = 0; i < _stylesheets.length; i++) {
+                if (_stylesheets[i] != other._stylesheets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -22,26 +22,22 @@ package org.xhtmlrenderer.css.newmatch;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.xhtmlrenderer.css.constants.MarginBoxName;
 import org.xhtmlrenderer.css.extend.AttributeResolver;
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
 import org.xhtmlrenderer.css.extend.TreeResolver;
 import org.xhtmlrenderer.css.sheet.FontFaceRule;
-import org.xhtmlrenderer.css.sheet.MediaRule;
 import org.xhtmlrenderer.css.sheet.PageRule;
 import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.Ruleset;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
-import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.util.Util;
 
 
@@ -63,19 +59,22 @@ public class Matcher {
     private Set<Object> _focusElements;
     private Set<Object> _visitElements;
     
-    private List<PageRule> _pageRules;
-    private List<FontFaceRule> _fontFaceRules;
+    private CompiledStylesheetSet _compiled;
     
     public Matcher(
             TreeResolver tr, AttributeResolver ar, StylesheetFactory factory, List<Stylesheet> stylesheets, String medium) {
+        this(tr, ar, factory, CompiledStylesheetSet.compile(stylesheets, medium));
+    }
+    
+    public Matcher(
+            TreeResolver tr, AttributeResolver ar, StylesheetFactory factory, CompiledStylesheetSet compiled) {
         newMaps();
         _treeRes = tr;
         _attRes = ar;
         _styleFactory = factory;
         
-        _pageRules = new ArrayList<PageRule>();
-        _fontFaceRules = new ArrayList<FontFaceRule>();
-        docMapper = createDocumentMapper(stylesheets, medium);
+        _compiled = compiled;
+        docMapper = new Mapper(compiled.getSelectors());
     }
     
     public void removeStyle(Object e) {
@@ -109,7 +108,7 @@ public class Matcher {
         List<PropertyDeclaration> props = new ArrayList<PropertyDeclaration>();
         Map<MarginBoxName, List<PropertyDeclaration>> marginBoxes = new HashMap<MarginBoxName, List<PropertyDeclaration>>();
 
-        for (Iterator<PageRule> i = _pageRules.iterator(); i.hasNext(); ) {
+        for (Iterator<PageRule> i = _compiled.getPageRules().iterator(); i.hasNext(); ) {
             PageRule pageRule = i.next();
             
             if (pageRule.applies(pageName, pseudoPage)) {
@@ -129,7 +128,14 @@ public class Matcher {
     }
     
     public List<FontFaceRule> getFontFaceRules() {
-        return _fontFaceRules;
+        return _compiled.getFontFaceRules();
+    }
+
+    /**
+     * @see CompiledStylesheetSet#isSiblingDependent()
+     */
+    public boolean isSiblingDependent() {
+        return _compiled.isSiblingDependent();
     }
     
     public boolean isVisitedStyled(Object e) {
@@ -162,63 +168,6 @@ public class Matcher {
         }
     }
 
-    Mapper createDocumentMapper(List<Stylesheet> stylesheets, String medium) {
-        java.util.TreeMap<String, Selector> sorter = new java.util.TreeMap<String, Selector>();
-        addAllStylesheets(stylesheets, sorter, medium);
-        XRLog.match("Matcher created with " + sorter.size() + " selectors");
-        return new Mapper(sorter.values());
-    }
-    
-    private void addAllStylesheets(List<Stylesheet> stylesheets, TreeMap<String, Selector> sorter, String medium) {
-        int count = 0;
-        int pCount = 0;
-        for (Iterator<Stylesheet> i = stylesheets.iterator(); i.hasNext(); ) {
-            Stylesheet stylesheet = (Stylesheet)i.next();
-            for (Iterator<Object> j = stylesheet.getContents().iterator(); j.hasNext(); ) {
-                Object obj = (Object)j.next();
-                if (obj instanceof Ruleset) {
-                    for (Iterator<Selector> k = ((Ruleset)obj).getFSSelectors().iterator(); k.hasNext(); ) {
-                        Selector selector = (Selector)k.next();
-                        selector.setPos(++count);
-                        sorter.put(selector.getOrder(), selector);
-                    }
-                } else if (obj instanceof PageRule) {
-                    ((PageRule)obj).setPos(++pCount);
-                    _pageRules.add((PageRule) obj);
-                } else if (obj instanceof MediaRule) {
-                    MediaRule mediaRule = (MediaRule)obj;
-                    if (mediaRule.matches(medium)) {
-                        for (Iterator<Ruleset> k = mediaRule.getContents().iterator(); k.hasNext(); ) {
-                            Ruleset ruleset = (Ruleset)k.next();
-                            for (Iterator<Selector> l = ruleset.getFSSelectors().iterator(); l.hasNext(); ) {
-                                Selector selector = (Selector)l.next();
-                                selector.setPos(++count);
-                                sorter.put(selector.getOrder(), selector);
-                            }
-                        }
-                    }
-                }
-            }
-            
-            _fontFaceRules.addAll(stylesheet.getFontFaceRules());
-        }
-        
-        Collections.sort(_pageRules, new Comparator<PageRule>() {
-            public int compare(PageRule o1, PageRule o2) {
-                PageRule p1 = (PageRule)o1;
-                PageRule p2 = (PageRule)o2;
-                
-                if (p1.getOrder() - p2.getOrder() < 0) {
-                    return -1;
-                } else if (p1.getOrder() == p2.getOrder()) {
-                    return 0;
-                } else {
-                    return 1;
-                }
-            }
-        });
-    }
-
     private void link(Object e, Mapper m) {
         _map.put(e, m);
     }
@@ -396,14 +345,18 @@ public class Matcher {
                     childAxes.add(chain);
                 }
             }
-            if (children == null) children = new HashMap<String, Mapper>();
-            Mapper childMapper = children.get(key.toString());
-            if (childMapper == null) {
-                childMapper = new Mapper();
-                childMapper.axes = childAxes;
-                childMapper.pseudoSelectors = pseudoSelectors;
-                childMapper.mappedSelectors = mappedSelectors;
-                children.put(key.toString(), childMapper);
+            Mapper childMapper;
+            // siblings may be matched concurrently on different threads
+            synchronized (this) {
+                if (children == null) children = new HashMap<String, Mapper>();
+                childMapper = children.get(key.toString());
+                if (childMapper == null) {
+                    childMapper = new Mapper();
+                    childMapper.axes = childAxes;
+                    childMapper.pseudoSelectors = pseudoSelectors;
+                    childMapper.mappedSelectors = mappedSelectors;
+                    children.put(key.toString(), childMapper);
+                }
             }
             link(e, childMapper);
             return childMapper;
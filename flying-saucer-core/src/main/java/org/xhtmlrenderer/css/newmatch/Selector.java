@@ -336,6 +336,15 @@ public class Selector {
         return chainedSelector;
     }
 
+    /**
+     * Whether matching this selector, or one further along its chain, looks
+     * at a sibling of the element (the <code>+</code> combinator).
+     */
+    public boolean isSiblingDependent() {
+        return siblingSelector != null ||
+                (chainedSelector != null && chainedSelector.isSiblingDependent());
+    }
+
     /**
      * get the Ruleset that this Selector is part of
      *
@@ -395,6 +404,21 @@ public class Selector {
         return "0" + b.substring(b.length() - 3) + c.substring(c.length() - 3) + d.substring(d.length() - 3) + p.substring(p.length() - 5);
     }
 
+    /**
+     * returns the specificity of the selector chain packed into a single
+     * value; unlike {@link #getOrder()} it does not depend on the position
+     * set by {@link #setPos(int)}, so it is safe to use while the selector
+     * is shared between matchers
+     *
+     * @return The specificity value
+     */
+    long getSpecificity() {
+        if (chainedSelector != null) {
+            return chainedSelector.getSpecificity();
+        }//only "deepest" value is correct
+        return ((long) getSpecificityB() << 40) | ((long) getSpecificityC() << 20) | getSpecificityD();
+    }
+
     /**
      * Gets the appropriateSibling attribute of the Selector object
      *
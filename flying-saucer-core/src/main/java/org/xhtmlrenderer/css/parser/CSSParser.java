@@ -36,9 +36,11 @@ import java.util.Set;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
+import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.constants.MarginBoxName;
 import org.xhtmlrenderer.css.extend.TreeResolver;
 import org.xhtmlrenderer.css.newmatch.Selector;
+import org.xhtmlrenderer.css.parser.property.Conversions;
 import org.xhtmlrenderer.css.parser.property.PropertyBuilder;
 import org.xhtmlrenderer.css.sheet.FontFaceRule;
 import org.xhtmlrenderer.css.sheet.MediaRule;
@@ -87,18 +89,45 @@ public class CSSParser {
             throws IOException {
         _URI = uri;
         reset(reader);
+        try {
+            Stylesheet result = new Stylesheet(uri, origin);
+            stylesheet(result);
+
+            return result;
+        } finally {
+            _lexer.releaseInput();
+        }
+    }
+
+    /**
+     * Parses a stylesheet held in memory, e.g. a <code>String</code> or a
+     * <code>CharBuffer</code> decoded from a (possibly memory-mapped) file.
+     * The text is scanned in place rather than through a <code>Reader</code>
+     * and token values are only turned into strings when the parser keeps
+     * them.
+     */
+    public Stylesheet parseStylesheet(String uri, CSSOrigin origin, CharSequence css) {
+        try {
+            _URI = uri;
+            reset(css);
 
-        Stylesheet result = new Stylesheet(uri, origin);
-        stylesheet(result);
+            Stylesheet result = new Stylesheet(uri, origin);
+            stylesheet(result);
 
-        return result;
+            return result;
+        } catch (IOException e) {
+            // "Shouldn't" happen
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            _lexer.releaseInput();
+        }
     }
 
     public Ruleset parseDeclaration(CSSOrigin origin, String text) {
         try {
             // XXX Set this to something more reasonable
             _URI = "style attribute";
-            reset(new StringReader(text));
+            reset(text);
 
             skip_whitespace();
 
@@ -120,7 +149,7 @@ public class CSSParser {
     public PropertyValue parsePropertyValue(CSSName cssName, CSSOrigin origin, String expr) {
         _URI = cssName + " property value";
         try {
-            reset(new StringReader(expr));
+            reset(expr);
             List<PropertyValue> values = expr(
                     cssName == CSSName.FONT_FAMILY ||
                     cssName == CSSName.FONT_SHORTHAND ||
@@ -1371,7 +1400,7 @@ public class CSSParser {
     private List<PropertyValue> expr(boolean literal) throws IOException {
         //System.out.println("expr()");
         List<PropertyValue> result = new ArrayList<PropertyValue>(10);
-        result.add(term(literal));
+        result.add(term(literal, true));
         LOOP: while (true) {
             Token t = la();
             boolean operator = false;
@@ -1406,7 +1435,8 @@ public class CSSParser {
                 case Token.URI:
                 case Token.HASH:
                 case Token.FUNCTION:
-                    PropertyValue term = term(literal);
+                    // Shared values can't carry an operator
+                    PropertyValue term = term(literal, operatorToken == null);
                     if (operatorToken != null) {
                         term.setOperator(operatorToken);
                     }
@@ -1472,7 +1502,12 @@ public class CSSParser {
 //        TIME S* | FREQ S* ]
 //    | STRING S* | IDENT S* | URI S* | hexcolor | function
 //    ;
-    private PropertyValue term(boolean literal) throws IOException {
+    /**
+     * If <code>shared</code> is true, common values (idents, colors, zero
+     * lengths, etc.) are returned as the shared, read-only instances held by
+     * {@link Conversions} instead of new objects.
+     */
+    private PropertyValue term(boolean literal, boolean shared) throws IOException {
         //System.out.println("term()");
         float sign = 1;
         Token t = la();
@@ -1509,29 +1544,47 @@ public class CSSParser {
             case Token.DIMENSION:
                 throw new CSSParseException("Unsupported CSS unit " + extractUnit(t), getCurrentLine());
             case Token.NUMBER:
-                result = new PropertyValueImp(
-                        CSSPrimitiveUnit.CSS_NUMBER,
-                        sign*Float.parseFloat(getTokenValue(t)),
-                        sign(sign) + getTokenValue(t));
+            {
+                String cssText = sign(sign) + getTokenValue(t);
+                result = shared ? Conversions.getSharedNumber(cssText) : null;
+                if (result == null) {
+                    result = new PropertyValueImp(
+                            CSSPrimitiveUnit.CSS_NUMBER,
+                            sign*Float.parseFloat(getTokenValue(t)),
+                            cssText);
+                }
                 next();
                 skip_whitespace();
                 break;
+            }
             case Token.PERCENTAGE:
-                result = new PropertyValueImp(
-                		CSSPrimitiveUnit.CSS_PERCENTAGE,
-                        sign*Float.parseFloat(extractNumber(t)),
-                        sign(sign) + getTokenValue(t));
+            {
+                String cssText = sign(sign) + getTokenValue(t);
+                result = shared ? Conversions.getSharedNumber(cssText) : null;
+                if (result == null) {
+                    result = new PropertyValueImp(
+                            CSSPrimitiveUnit.CSS_PERCENTAGE,
+                            sign*Float.parseFloat(extractNumber(t)),
+                            cssText);
+                }
                 next();
                 skip_whitespace();
                 break;
+            }
             case Token.EMS:
-                result = new PropertyValueImp(
-                		CSSPrimitiveUnit.CSS_EMS,
-                        sign*Float.parseFloat(extractNumber(t)),
-                        sign(sign) + getTokenValue(t));
+            {
+                String cssText = sign(sign) + getTokenValue(t);
+                result = shared ? Conversions.getSharedNumber(cssText) : null;
+                if (result == null) {
+                    result = new PropertyValueImp(
+                            CSSPrimitiveUnit.CSS_EMS,
+                            sign*Float.parseFloat(extractNumber(t)),
+                            cssText);
+                }
                 next();
                 skip_whitespace();
                 break;
+            }
             case Token.EXS:
                 result = new PropertyValueImp(
                 		CSSPrimitiveUnit.CSS_EXS,
@@ -1541,13 +1594,19 @@ public class CSSParser {
                 skip_whitespace();
                 break;
             case Token.PX:
-                result = new PropertyValueImp(
-                		CSSPrimitiveUnit.CSS_PX,
-                        sign*Float.parseFloat(extractNumber(t)),
-                        sign(sign) + getTokenValue(t));
+            {
+                String cssText = sign(sign) + getTokenValue(t);
+                result = shared ? Conversions.getSharedNumber(cssText) : null;
+                if (result == null) {
+                    result = new PropertyValueImp(
+                            CSSPrimitiveUnit.CSS_PX,
+                            sign*Float.parseFloat(extractNumber(t)),
+                            cssText);
+                }
                 next();
                 skip_whitespace();
                 break;
+            }
             case Token.CM:
                 result = new PropertyValueImp(
                 		CSSPrimitiveUnit.CSS_CM,
@@ -1599,10 +1658,15 @@ public class CSSParser {
                 break;
             case Token.IDENT:
                 String value = getTokenValue(t, literal);
-                result = new PropertyValueImp(
-                		CSSPrimitiveUnit.CSS_IDENT,
-                        value,
-                        value);
+                IdentValue ident = shared ? IdentValue.fsValueOf(value) : null;
+                if (ident != null) {
+                    result = Conversions.getSharedIdent(ident);
+                } else {
+                    result = new PropertyValueImp(
+                            CSSPrimitiveUnit.CSS_IDENT,
+                            value,
+                            value);
+                }
                 next();
                 skip_whitespace();
                 break;
@@ -1615,7 +1679,7 @@ public class CSSParser {
                 skip_whitespace();
                 break;
             case Token.HASH:
-                result = hexcolor();
+                result = hexcolor(shared);
                 break;
             case Token.FUNCTION:
                 result = function();
@@ -1780,7 +1844,7 @@ public class CSSParser {
 // hexcolor
 //   : HASH S*
 //   ;
-    private PropertyValue hexcolor() throws IOException {
+    private PropertyValue hexcolor(boolean shared) throws IOException {
         //System.out.println("hexcolor()");
         PropertyValue result = null;
         Token t = next();
@@ -1790,19 +1854,21 @@ public class CSSParser {
                 push(t);
                 throw new CSSParseException('#' + s + " is not a valid color definition", getCurrentLine());
             }
-            FSRGBColor color = null;
+            int rgb;
             if (s.length() == 3) {
-                color = new FSRGBColor(
-                            convertToInteger(s.charAt(0), s.charAt(0)),
-                            convertToInteger(s.charAt(1), s.charAt(1)),
-                            convertToInteger(s.charAt(2), s.charAt(2)));
+                rgb = convertToInteger(s.charAt(0), s.charAt(0)) << 16 |
+                        convertToInteger(s.charAt(1), s.charAt(1)) << 8 |
+                        convertToInteger(s.charAt(2), s.charAt(2));
             } else { /* s.length == 6 */
-                color = new FSRGBColor(
-                        convertToInteger(s.charAt(0), s.charAt(1)),
-                        convertToInteger(s.charAt(2), s.charAt(3)),
-                        convertToInteger(s.charAt(4), s.charAt(5)));
+                rgb = convertToInteger(s.charAt(0), s.charAt(1)) << 16 |
+                        convertToInteger(s.charAt(2), s.charAt(3)) << 8 |
+                        convertToInteger(s.charAt(4), s.charAt(5));
+            }
+            if (shared) {
+                result = Conversions.getSharedColor(rgb);
+            } else {
+                result = new PropertyValueImp(new FSRGBColor(rgb));
             }
-            result = new PropertyValueImp(color);
             skip_whitespace();
         } else {
             push(t);
@@ -1935,6 +2001,13 @@ public class CSSParser {
         _lexer.setyyline(0);
     }
 
+    public void reset(CharSequence css) {
+        _saved = null;
+        _namespaces.clear();
+        _lexer.yyreset(css);
+        _lexer.setyyline(0);
+    }
+
     public CSSErrorHandler getErrorHandler() {
         return _errorHandler;
     }
@@ -1952,18 +2025,19 @@ public class CSSParser {
     }
 
     private String getTokenValue(Token t, boolean literal) {
+        // Work on the lexer's buffer directly; the matched text is at
+        // [offset, offset + count)
+        char[] ch = _lexer.getTokenBuffer();
+        int offset = _lexer.getTokenStart();
+        int count = _lexer.yylength();
         int start;
-        int count;
         switch (t.getType()) {
             case Token.STRING:
-                count = _lexer.yylength();
-                return processEscapes(_lexer.yytext().toCharArray(), 1, count-1);
+                return processEscapes(ch, offset+1, offset+count-1);
             case Token.HASH:
-                count = _lexer.yylength();
-                return processEscapes(_lexer.yytext().toCharArray(), 1, count);
+                return processEscapes(ch, offset+1, offset+count);
             case Token.URI:
-                char[] ch = _lexer.yytext().toCharArray();
-                start = 4;
+                start = offset+4;
                 while (ch[start] == '\t' || ch[start] == '\r' ||
                         ch[start] == '\n' || ch[start] == '\f') {
                     start++;
@@ -1971,7 +2045,7 @@ public class CSSParser {
                 if (ch[start] == '\'' || ch[start] == '"') {
                     start++;
                 }
-                int end = ch.length-2;
+                int end = offset+count-2;
                 while (ch[end] == '\t' || ch[end] == '\r' ||
                         ch[end] == '\n' || ch[end] == '\f') {
                     end--;
@@ -1983,7 +2057,7 @@ public class CSSParser {
                 String uriResult = processEscapes(ch, start, end+1);
 
                 // Relative URIs are resolved relative to CSS file, not XHTML file
-                if (isRelativeURI(uriResult)) {
+                if (_URI != null && isRelativeURI(uriResult)) {
                     int lastSlash = _URI.lastIndexOf('/');
                     if (lastSlash != -1) {
                         uriResult = _URI.substring(0, lastSlash+1) + uriResult;
@@ -1994,12 +2068,11 @@ public class CSSParser {
             case Token.AT_RULE:
             case Token.IDENT:
             case Token.FUNCTION:
-                start = 0;
-                count = _lexer.yylength();
+                start = offset;
                 if (t.getType() == Token.AT_RULE) {
                     start++;
                 }
-                String result = processEscapes(_lexer.yytext().toCharArray(), start, count);
+                String result = processEscapes(ch, start, offset+count);
                 if (! literal) {
                     result = result.toLowerCase();
                 }
@@ -2026,7 +2099,11 @@ public class CSSParser {
     }
 
     private static String processEscapes(char[] ch, int start, int end) {
-        StringBuffer result = new StringBuffer(ch.length + 10);
+        if (indexOf(ch, start, end, '\\') == -1) {
+            return new String(ch, start, end - start);
+        }
+
+        StringBuffer result = new StringBuffer(end - start + 10);
 
         for (int i = start; i < end; i++) {
             char c = ch[i];
@@ -2074,6 +2151,15 @@ public class CSSParser {
         return result.toString();
     }
 
+    private static int indexOf(char[] ch, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (ch[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public boolean isSupportCMYKColors() {
         return _supportCMYKColors;
     }
@@ -1563,6 +1563,69 @@ class Lexer {
     	this.yyline = i;
 	}
 
+    private static final java.io.Reader EOF_READER = new java.io.Reader() {
+        public int read(char[] cbuf, int off, int len) {
+            return -1;
+        }
+
+        public void close() {
+        }
+    };
+
+    /**
+     * Resets the scanner to scan all of <code>input</code>. The input is
+     * copied once into the scanner's buffer (which is kept and reused by
+     * later calls) instead of being read through a Reader in blocks.
+     */
+    public void yyreset(CharSequence input) {
+        int length = input.length();
+        if (zzBuffer.length <= length) {
+            zzBuffer = new char[length + 1];
+        }
+        if (input instanceof String) {
+            ((String) input).getChars(0, length, zzBuffer, 0);
+        } else if (input instanceof java.nio.CharBuffer) {
+            ((java.nio.CharBuffer) input).duplicate().get(zzBuffer, 0, length);
+        } else if (input instanceof StringBuilder) {
+            ((StringBuilder) input).getChars(0, length, zzBuffer, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                zzBuffer[i] = input.charAt(i);
+            }
+        }
+        yyreset(EOF_READER);
+        zzEndRead = length;
+    }
+
+    /**
+     * Ends the current input and drops a buffer grown beyond its initial
+     * size by a large stylesheet, so a scanner kept for reuse (e.g. per
+     * thread) doesn't hold on to the largest input it has ever scanned.
+     */
+    public void releaseInput() {
+        yyreset(EOF_READER);
+        if (zzBuffer.length > ZZ_BUFFERSIZE) {
+            zzBuffer = new char[ZZ_BUFFERSIZE];
+        }
+    }
+
+    /**
+     * Returns the buffer holding the matched text. Together with
+     * {@link #getTokenStart()} and {@link #yylength()} this gives access to
+     * the text without creating a String. Only valid until the next call
+     * to {@link #yylex()}.
+     */
+    char[] getTokenBuffer() {
+        return zzBuffer;
+    }
+
+    /**
+     * Returns the offset of the matched text in {@link #getTokenBuffer()}.
+     */
+    int getTokenStart() {
+        return zzStartRead;
+    }
+
 
   /**
    * Creates a new scanner
@@ -61,6 +61,16 @@ public class ParserTest {
         
         CSSParser p = new CSSParser(errorHandler);
         
+        String longTestString = longTest.toString();
+        total = 0;
+        for (int i = 0; i < 10; i++) {
+            long start = System.currentTimeMillis();
+            p.parseStylesheet(null, CSSOrigin.AUTHOR, longTestString);
+            long end = System.currentTimeMillis();
+            total += (end-start);
+        }
+        System.out.println("Average (in memory) " + (total/10) + " ms");
+        
         total = 0;
         for (int i = 0; i < 10; i++) {
             long start = System.currentTimeMillis();
@@ -27,7 +27,6 @@ import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.parser.CSSParseException;
-import org.xhtmlrenderer.css.parser.FSRGBColor;
 import org.xhtmlrenderer.css.parser.PropertyValue;
 import org.xhtmlrenderer.css.parser.PropertyValueImp;
 import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
@@ -75,7 +74,7 @@ public class BackgroundPropertyBuilder implements PropertyBuilder {
             boolean processingBackgroundPosition = false;
             CSSPrimitiveUnit type = value.getPrimitiveTypeN();
             if (type == CSSPrimitiveUnit.CSS_IDENT) {
-                FSRGBColor color = Conversions.getColor(value.getStringValue());
+                PropertyValue color = Conversions.getColorValue(value.getStringValue());
                 if (color != null) {
                     if (backgroundColor != null) {
                         throw new CSSParseException("A background-color value cannot be set twice", -1);
@@ -83,7 +82,7 @@ public class BackgroundPropertyBuilder implements PropertyBuilder {
                     
                     backgroundColor = new PropertyDeclaration(
                             CSSName.BACKGROUND_COLOR, 
-                            new PropertyValueImp(color), 
+                            color, 
                             important, origin);
                     continue;
                 }
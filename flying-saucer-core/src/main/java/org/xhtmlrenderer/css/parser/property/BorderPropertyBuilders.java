@@ -27,7 +27,6 @@ import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.parser.CSSParseException;
-import org.xhtmlrenderer.css.parser.FSRGBColor;
 import org.xhtmlrenderer.css.parser.PropertyValue;
 import org.xhtmlrenderer.css.parser.PropertyValueImp;
 import org.xhtmlrenderer.css.parser.PropertyValueImp.CSSValueType;
@@ -164,9 +163,9 @@ public class BorderPropertyBuilders {
             if (type == CSSPrimitiveUnit.CSS_RGBCOLOR) {
                 return value;
             } else {
-                FSRGBColor color = Conversions.getColor(value.getStringValue());
+                PropertyValue color = Conversions.getColorValue(value.getStringValue());
                 if (color != null) {
-                    return new PropertyValueImp(color);
+                    return color;
                 }
                 
                 IdentValue ident = IdentValue.fsValueOf(value.getCssText());
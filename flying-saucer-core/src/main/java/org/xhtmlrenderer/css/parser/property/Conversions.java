@@ -22,6 +22,7 @@ package org.xhtmlrenderer.css.parser.property;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -33,6 +34,17 @@ public class Conversions {
     private static final Map<String, FSRGBColor> COLORS = new HashMap<>();
     private static final Map<Float, IdentValue> NUMERIC_FONT_WEIGHTS = new HashMap<>();
     private static final Map<String, PropertyValue> BORDER_WIDTHS = new HashMap<>();
+
+    /*
+     * Shared property values for common terms, so repeated declarations
+     * don't each allocate (and retain) their own copy. Like BORDER_WIDTHS
+     * these must never be modified.
+     */
+    private static final PropertyValue[] SHARED_IDENTS = new PropertyValue[IdentValue.values().length];
+    private static final Map<String, PropertyValue> SHARED_NAMED_COLORS = new HashMap<>();
+    private static final Map<String, PropertyValue> SHARED_NUMBERS = new HashMap<>();
+    private static final Map<Integer, PropertyValue> SHARED_HEX_COLORS = new ConcurrentHashMap<>();
+    private static final int MAX_SHARED_HEX_COLORS = 512;
     
     static {
         COLORS.put("cyan", new FSRGBColor(0x00FFFF));
@@ -193,11 +205,74 @@ public class Conversions {
         BORDER_WIDTHS.put("medium", new PropertyValueImp(CSSPrimitiveUnit.CSS_PX, 2.0f, "2px"));
         BORDER_WIDTHS.put("thick", new PropertyValueImp(CSSPrimitiveUnit.CSS_PX, 3.0f, "3px"));
     }
+
+    static {
+        for (IdentValue ident : IdentValue.values()) {
+            SHARED_IDENTS[ident.fsId] = new PropertyValueImp(ident);
+        }
+
+        for (Map.Entry<String, FSRGBColor> entry : COLORS.entrySet()) {
+            SHARED_NAMED_COLORS.put(entry.getKey(), new PropertyValueImp(entry.getValue()));
+        }
+
+        SHARED_NUMBERS.put("0", new PropertyValueImp(CSSPrimitiveUnit.CSS_NUMBER, 0.0f, "0"));
+        SHARED_NUMBERS.put("1", new PropertyValueImp(CSSPrimitiveUnit.CSS_NUMBER, 1.0f, "1"));
+        SHARED_NUMBERS.put("0px", new PropertyValueImp(CSSPrimitiveUnit.CSS_PX, 0.0f, "0px"));
+        SHARED_NUMBERS.put("1px", new PropertyValueImp(CSSPrimitiveUnit.CSS_PX, 1.0f, "1px"));
+        SHARED_NUMBERS.put("2px", new PropertyValueImp(CSSPrimitiveUnit.CSS_PX, 2.0f, "2px"));
+        SHARED_NUMBERS.put("0%", new PropertyValueImp(CSSPrimitiveUnit.CSS_PERCENTAGE, 0.0f, "0%"));
+        SHARED_NUMBERS.put("50%", new PropertyValueImp(CSSPrimitiveUnit.CSS_PERCENTAGE, 50.0f, "50%"));
+        SHARED_NUMBERS.put("100%", new PropertyValueImp(CSSPrimitiveUnit.CSS_PERCENTAGE, 100.0f, "100%"));
+        SHARED_NUMBERS.put("0em", new PropertyValueImp(CSSPrimitiveUnit.CSS_EMS, 0.0f, "0em"));
+        SHARED_NUMBERS.put("1em", new PropertyValueImp(CSSPrimitiveUnit.CSS_EMS, 1.0f, "1em"));
+    }
     
     public static FSRGBColor getColor(String ident) {
         return COLORS.get(ident);
     }
     
+    /**
+     * Returns a shared, read-only value for the named color
+     * <code>ident</code> or <code>null</code> if it isn't a color name.
+     */
+    public static PropertyValue getColorValue(String ident) {
+        return SHARED_NAMED_COLORS.get(ident);
+    }
+
+    /**
+     * Returns a shared, read-only value for <code>ident</code>.
+     */
+    public static PropertyValue getSharedIdent(IdentValue ident) {
+        return SHARED_IDENTS[ident.fsId];
+    }
+
+    /**
+     * Returns a shared, read-only value for a common number, length or
+     * percentage (e.g. <code>0</code>, <code>1px</code> or
+     * <code>100%</code>) or <code>null</code> if <code>cssText</code> isn't
+     * one of them.
+     */
+    public static PropertyValue getSharedNumber(String cssText) {
+        return SHARED_NUMBERS.get(cssText);
+    }
+
+    /**
+     * Returns a shared, read-only value for the opaque color
+     * <code>rgb</code> (as <code>0xRRGGBB</code>).  Only the first few
+     * hundred distinct colors seen are kept.
+     */
+    public static PropertyValue getSharedColor(int rgb) {
+        Integer key = Integer.valueOf(rgb);
+        PropertyValue result = SHARED_HEX_COLORS.get(key);
+        if (result == null) {
+            result = new PropertyValueImp(new FSRGBColor(rgb));
+            if (SHARED_HEX_COLORS.size() < MAX_SHARED_HEX_COLORS) {
+                SHARED_HEX_COLORS.put(key, result);
+            }
+        }
+        return result;
+    }
+
     public static IdentValue getNumericFontWeight(float weight) {
         return NUMERIC_FONT_WEIGHTS.get(new Float(weight));
     }
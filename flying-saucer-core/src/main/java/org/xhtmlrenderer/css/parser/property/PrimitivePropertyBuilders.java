@@ -30,7 +30,6 @@ import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.parser.FSFunction;
-import org.xhtmlrenderer.css.parser.FSRGBColor;
 import org.xhtmlrenderer.css.parser.PropertyValue;
 import org.xhtmlrenderer.css.parser.PropertyValueImp;
 import org.xhtmlrenderer.css.parser.Token;
@@ -161,11 +160,11 @@ public class PrimitivePropertyBuilders {
             	checkValueType(cssName, value, EnumSet.of(CSSPrimitiveUnit.CSS_IDENT, CSSPrimitiveUnit.CSS_RGBCOLOR));
 
                 if (value.getPrimitiveTypeN() == CSSPrimitiveUnit.CSS_IDENT) {
-                    FSRGBColor color = Conversions.getColor(value.getStringValue());
+                    PropertyValue color = Conversions.getColorValue(value.getStringValue());
                     if (color != null) {
                         return Collections.singletonList(
                                 new PropertyDeclaration(
-                                        cssName, new PropertyValueImp(color),
+                                        cssName, color,
                                         important, origin));
                     }
 
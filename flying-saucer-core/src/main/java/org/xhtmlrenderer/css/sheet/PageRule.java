@@ -102,12 +102,18 @@ public class PageRule implements RulesetContainer {
     }
     
     public long getOrder() {
+        return getSpecificity() | _pos;
+    }
+    
+    /**
+     * Same as {@link #getOrder()} without the position in the stylesheet.
+     */
+    public long getSpecificity() {
         long result = 0;
         
         result |= (long)_specificityF << 32;
         result |= (long)_specificityG << 24;
         result |= (long)_specificityH << 16;
-        result |= _pos;
         
         return result;
     }
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.logging.Level;
 
 import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.newmatch.CascadedStyle;
 import org.xhtmlrenderer.css.parser.FSColor;
@@ -1125,6 +1126,25 @@ public class CalculatedStyle {
         return isAbsolute() || isFixed() || isInlineBlock() || isInlineTable();
     }
 
+    /**
+     * Whether any of the horizontal metrics of a box (width, min-width,
+     * max-width, horizontal margins and padding, text-indent) is a percentage
+     * and so depends on the width of the containing block.
+     */
+    public boolean hasPercentageWidthMetrics() {
+        return isPercentage(CSSName.WIDTH) || isPercentage(CSSName.MIN_WIDTH) ||
+                isPercentage(CSSName.MAX_WIDTH) ||
+                isPercentage(CSSName.MARGIN_LEFT) || isPercentage(CSSName.MARGIN_RIGHT) ||
+                isPercentage(CSSName.PADDING_LEFT) || isPercentage(CSSName.PADDING_RIGHT) ||
+                isPercentage(CSSName.TEXT_INDENT);
+    }
+
+    private boolean isPercentage(CSSName cssName) {
+        FSDerivedValue val = valueByName(cssName);
+        return val instanceof LengthValue &&
+                ((LengthValue) val).getCssSacUnitType() == CSSPrimitiveUnit.CSS_PERCENTAGE;
+    }
+
     public boolean isMaxWidthNone() {
         return isIdent(CSSName.MAX_WIDTH, IdentValue.NONE);
     }
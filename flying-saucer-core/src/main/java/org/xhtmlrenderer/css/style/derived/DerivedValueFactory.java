@@ -20,8 +20,8 @@
  */
 package org.xhtmlrenderer.css.style.derived;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -32,7 +32,7 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.FSDerivedValue;
 
 public class DerivedValueFactory {
-    private static final Map<String, FSDerivedValue> CACHED_COLORS = new HashMap<String, FSDerivedValue>();
+    private static final Map<String, FSDerivedValue> CACHED_COLORS = new ConcurrentHashMap<String, FSDerivedValue>();
     
     public static FSDerivedValue newDerivedValue(
             CalculatedStyle style, CSSName cssName, PropertyValue value) {
@@ -83,6 +83,10 @@ public class BoxBuilder {
     public static BlockBox createRootBox(LayoutContext c, Document document) {
         Element root = document;
 
+        if (c.getSharedContext().isParallelStyleResolution()) {
+            ParallelStyleResolver.resolve(c.getSharedContext(), root);
+        }
+
         CalculatedStyle style = c.getSharedContext().getStyle(root);
 
         BlockBox result;
@@ -109,6 +113,8 @@ public class BoxBuilder {
     }
 
     public static void createChildren(LayoutContext c, BlockBox parent) {
+        c.checkCancelled();
+
         List<Styleable> children = new ArrayList<Styleable>();
 
         ChildBoxInfo info = new ChildBoxInfo();
@@ -821,6 +827,7 @@ public class BoxBuilder {
                     }
 
                     if (cFunc != null) {
+                        c.getSharedContext().setCounterFunctionsUsed(true);
                         //TODO: counter functions may be called with non-ordered list-style-types, e.g. disc
                         content = cFunc.evaluate();
                         contentFunction = null;
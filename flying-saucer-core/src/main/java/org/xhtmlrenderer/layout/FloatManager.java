@@ -44,6 +44,10 @@ public class FloatManager {
 
     private Box _master;
 
+    public boolean hasFloats() {
+        return _leftFloats.size() > 0 || _rightFloats.size() > 0;
+    }
+
     public void floatBox(LayoutContext c, Layer layer, BlockFormattingContext bfc, BlockBox box) {
         if (box.getStyle().isFloatedLeft()) {
             position(c, bfc, box, LEFT);
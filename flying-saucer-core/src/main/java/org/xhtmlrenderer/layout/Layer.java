@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.PageElementPosition;
@@ -48,6 +49,7 @@ import org.xhtmlrenderer.render.InlineLayoutBox;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.util.XRLog;
 
 /**
  * All positioned content as well as content with an overflow value other
@@ -1082,10 +1084,13 @@ public class Layer {
     
     public void layoutPages(LayoutContext c) {
         c.setRootDocumentLayer(c.getRootLayer());
+        PageBox.MarginAreaCache cache = new PageBox.MarginAreaCache();
         for (Iterator<PageBox> i = _pages.iterator(); i.hasNext(); ) {
             PageBox pageBox = i.next();
-            pageBox.layout(c);
+            pageBox.layout(c, cache);
         }
+        XRLog.layout(Level.FINE, "Margin areas laid out for " + cache.getLayoutCount() +
+                " pages, reused for " + cache.getReuseCount());
     }
     
     public void addPageSequence(BlockBox start) {
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import org.xhtmlrenderer.context.ContentFunctionFactory;
 import org.xhtmlrenderer.context.StyleReference;
@@ -88,6 +89,10 @@ public class LayoutContext implements CssContext {
     
     // TODO: Give user choice of locale.
     private final BreakIterator _breakit;
+
+    private volatile boolean _cancelled;
+
+    private boolean _incrementalRelayout;
     
     public TextRenderer getTextRenderer() {
         return _sharedContext.getTextRenderer();
@@ -285,6 +290,43 @@ public class LayoutContext implements CssContext {
         return _sharedContext.getUac();
     }
 
+    /**
+     * Asks a layout running with this context (normally on another thread)
+     * to stop. The layout throws a {@link CancellationException} when it
+     * reaches the next block box.
+     */
+    public void cancel() {
+        _cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * Throws a {@link CancellationException} if {@link #cancel()} has been
+     * called.
+     */
+    public void checkCancelled() {
+        if (_cancelled) {
+            throw new CancellationException("Layout cancelled");
+        }
+    }
+
+    /**
+     * Whether the box tree is being reset and laid out again only because the
+     * viewport has changed size (the document and its styles haven't
+     * changed). Boxes may then keep line breaking and min/max width results
+     * that don't depend on the width of their containing block.
+     */
+    public boolean isIncrementalRelayout() {
+        return _incrementalRelayout;
+    }
+
+    public void setIncrementalRelayout(boolean incrementalRelayout) {
+        _incrementalRelayout = incrementalRelayout;
+    }
+
     public boolean isPrint() {
         return _sharedContext.isPrint();
     }
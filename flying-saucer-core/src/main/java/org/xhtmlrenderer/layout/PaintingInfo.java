@@ -33,6 +33,10 @@ public class PaintingInfo {
     private Dimension _outerMarginCorner;
     private Rectangle _aggregateBounds;
     
+    // the absolute position of the box when this was calculated
+    private int _x;
+    private int _y;
+    
     public PaintingInfo() {
     }
     
@@ -52,15 +56,31 @@ public class PaintingInfo {
         _outerMarginCorner = outerMarginCorner;
     }
     
+    public int getX() {
+        return _x;
+    }
+    
+    public int getY() {
+        return _y;
+    }
+    
+    public void setLocation(int x, int y) {
+        _x = x;
+        _y = y;
+    }
+    
     public PaintingInfo copyOf() {
         PaintingInfo result = new PaintingInfo();
         result.setOuterMarginCorner(new Dimension(_outerMarginCorner));
         result.setAggregateBounds(new Rectangle(_aggregateBounds));
+        result.setLocation(_x, _y);
         
         return result;
     }
     
     public void translate(int tx, int ty) {
+        _x += tx;
+        _y += ty;
         _aggregateBounds.translate(tx, ty);
         _outerMarginCorner.setSize(
                 _outerMarginCorner.getWidth()+tx, _outerMarginCorner.getHeight()+ty);
@@ -0,0 +1,89 @@
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * Computes the {@link org.xhtmlrenderer.css.style.CalculatedStyle} of every
+ * element of a document ahead of layout, styling sibling subtrees
+ * concurrently on a fork/join pool. An element's style only depends on the
+ * styles of its ancestors and the cascade, so once an element has been styled
+ * each of its child subtrees can be styled independently.
+ * <p>
+ * The results end up in the style cache of the {@link SharedContext}, where
+ * {@link BoxBuilder} picks them up during layout. Enabled by
+ * {@link SharedContext#setParallelStyleResolution(boolean)} or the
+ * <code>xr.layout.parallel-styles</code> configuration property.
+ */
+public final class ParallelStyleResolver {
+    private ParallelStyleResolver() {
+    }
+
+    /**
+     * Styles <code>root</code> and all its descendant elements, returning
+     * when every style has been computed.
+     */
+    public static void resolve(SharedContext c, Element root) {
+        long start = System.currentTimeMillis();
+
+        ParallelSupport.getPool().invoke(
+                new StyleTask(c, root, ParallelSupport.ErrorContext.capture()));
+
+        XRLog.layout("TIME: parallel style resolution " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static final class StyleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SharedContext _sharedContext;
+        private final Element _element;
+        private final ParallelSupport.ErrorContext _errorContext;
+
+        StyleTask(SharedContext c, Element element, ParallelSupport.ErrorContext errorContext) {
+            _sharedContext = c;
+            _element = element;
+            _errorContext = errorContext;
+        }
+
+        protected void compute() {
+            // CSS errors found while parsing style attributes are reported
+            // to the calling thread
+            ParallelSupport.ErrorContext previous = _errorContext.install();
+            try {
+                resolve();
+            } finally {
+                previous.restore();
+            }
+        }
+
+        private void resolve() {
+            _sharedContext.getStyle(_element);
+
+            List<StyleTask> subtasks = null;
+            for (Node child : _element.childNodes()) {
+                if (!(child instanceof Element)) {
+                    continue;
+                }
+                Element e = (Element) child;
+                if (e.children().isEmpty()) {
+                    // Not worth a task of its own
+                    _sharedContext.getStyle(e);
+                } else {
+                    if (subtasks == null) {
+                        subtasks = new ArrayList<StyleTask>();
+                    }
+                    subtasks.add(new StyleTask(_sharedContext, e, _errorContext));
+                }
+            }
+
+            if (subtasks != null) {
+                invokeAll(subtasks);
+            }
+        }
+    }
+}
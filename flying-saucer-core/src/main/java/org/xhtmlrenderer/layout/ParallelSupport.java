@@ -0,0 +1,93 @@
+package org.xhtmlrenderer.layout;
+
+import java.util.Collections;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared plumbing for the optional multi-threaded parts of the renderer
+ * (parallel stylesheet parsing and style resolution).
+ */
+public final class ParallelSupport {
+    private static ForkJoinPool _pool;
+
+    private ParallelSupport() {
+    }
+
+    /**
+     * Returns the fork/join pool used for parallel work, creating it (one
+     * worker per processor) on first use.
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool();
+        }
+        return _pool;
+    }
+
+    /**
+     * The error reporting state ({@link SharedContext#ERRS} and
+     * {@link SharedContext#USER_ERRORS}) of the thread that starts a parallel
+     * operation. Worker threads install it so CSS errors they find are
+     * reported to the caller, and restore their own state when done so pool
+     * threads don't keep the caller's state (and its error set) alive. The
+     * caller must not use its error set until the operation has completed.
+     */
+    public static final class ErrorContext {
+        private final ResourceBundle _errs;
+        private final Set<String> _userErrors;
+
+        private ErrorContext(ResourceBundle errs, Set<String> userErrors) {
+            _errs = errs;
+            _userErrors = userErrors;
+        }
+
+        /**
+         * Captures the calling thread's error reporting state.
+         */
+        public static ErrorContext capture() {
+            Set<String> userErrors = SharedContext.USER_ERRORS.get();
+            return new ErrorContext(
+                    SharedContext.ERRS.get(),
+                    userErrors == null ? null : Collections.synchronizedSet(userErrors));
+        }
+
+        /**
+         * Returns the calling thread's error reporting state as it is, to be
+         * restored with {@link #restore()}.
+         */
+        public static ErrorContext current() {
+            return new ErrorContext(SharedContext.ERRS.get(), SharedContext.USER_ERRORS.get());
+        }
+
+        /**
+         * Makes the captured state current on the calling (worker) thread.
+         * Returns the state it replaces, which must be restored in a
+         * <code>finally</code> block once the work is done.
+         */
+        public ErrorContext install() {
+            ErrorContext previous = current();
+            SharedContext.ERRS.set(_errs);
+            SharedContext.USER_ERRORS.set(_userErrors);
+            return previous;
+        }
+
+        /**
+         * Makes this state current on the calling thread again, removing the
+         * thread locals it doesn't have a value for.
+         */
+        public void restore() {
+            if (_errs == null) {
+                SharedContext.ERRS.remove();
+            } else {
+                SharedContext.ERRS.set(_errs);
+            }
+            if (_userErrors == null) {
+                SharedContext.USER_ERRORS.remove();
+            } else {
+                SharedContext.USER_ERRORS.set(_userErrors);
+            }
+        }
+    }
+}
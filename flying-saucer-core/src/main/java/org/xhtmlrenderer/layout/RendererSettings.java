@@ -0,0 +1,144 @@
+package org.xhtmlrenderer.layout;
+
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * The configuration properties the renderers consult for every document,
+ * string or background, read from {@link Configuration} once and kept in
+ * final fields. Each {@link SharedContext} carries the settings its
+ * renderer uses, {@link #getDefault()} unless replaced with
+ * {@link SharedContext#setRendererSettings(RendererSettings)}, so renderers
+ * running concurrently can use different settings. Immutable; use a
+ * {@link Builder} to derive other settings.
+ */
+public final class RendererSettings {
+    private static RendererSettings _default;
+
+    private final boolean _cacheStylesheets;
+    private final boolean _drawBackgrounds;
+    private final boolean _replaceMissingCharacters;
+    private final char _missingCharacterReplacement;
+    private final boolean _fontFallback;
+
+    private RendererSettings(Builder builder) {
+        _cacheStylesheets = builder._cacheStylesheets;
+        _drawBackgrounds = builder._drawBackgrounds;
+        _replaceMissingCharacters = builder._replaceMissingCharacters;
+        _missingCharacterReplacement = builder._missingCharacterReplacement;
+        _fontFallback = builder._fontFallback;
+    }
+
+    /**
+     * The settings of the configuration, read on first use.
+     */
+    public static synchronized RendererSettings getDefault() {
+        if (_default == null) {
+            _default = new Builder().build();
+        }
+        return _default;
+    }
+
+    /**
+     * Whether stylesheets are kept in the user agent's cache between
+     * documents (<code>xr.cache.stylesheets</code>).
+     */
+    public boolean isCacheStylesheets() {
+        return _cacheStylesheets;
+    }
+
+    /**
+     * Whether background colors and images are painted
+     * (<code>xr.renderer.draw.backgrounds</code>).
+     */
+    public boolean isDrawBackgrounds() {
+        return _drawBackgrounds;
+    }
+
+    /**
+     * Whether characters missing from the font are replaced by
+     * {@link #getMissingCharacterReplacement()} when drawing text
+     * (<code>xr.renderer.replace-missing-characters</code>, PDF only).
+     */
+    public boolean isReplaceMissingCharacters() {
+        return _replaceMissingCharacters;
+    }
+
+    /**
+     * <code>xr.renderer.missing-character-replacement</code>
+     */
+    public char getMissingCharacterReplacement() {
+        return _missingCharacterReplacement;
+    }
+
+    /**
+     * Whether characters missing from the first available font of the
+     * <code>font-family</code> list are shown with the next font of the list
+     * that has them (<code>xr.renderer.font-fallback</code>, PDF only).
+     */
+    public boolean isFontFallback() {
+        return _fontFallback;
+    }
+
+    /**
+     * Creates {@link RendererSettings}, starting from the configuration or
+     * from existing settings.
+     */
+    public static final class Builder {
+        private boolean _cacheStylesheets;
+        private boolean _drawBackgrounds;
+        private boolean _replaceMissingCharacters;
+        private char _missingCharacterReplacement;
+        private boolean _fontFallback;
+
+        /**
+         * Starts from the values of the configuration.
+         */
+        public Builder() {
+            _cacheStylesheets = Configuration.isTrue("xr.cache.stylesheets", true);
+            _drawBackgrounds = Configuration.isTrue("xr.renderer.draw.backgrounds", true);
+            _replaceMissingCharacters = Configuration.isTrue("xr.renderer.replace-missing-characters", false);
+            _missingCharacterReplacement = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+            _fontFallback = Configuration.isTrue("xr.renderer.font-fallback", false);
+        }
+
+        /**
+         * Starts from the values of <code>settings</code>.
+         */
+        public Builder(RendererSettings settings) {
+            _cacheStylesheets = settings._cacheStylesheets;
+            _drawBackgrounds = settings._drawBackgrounds;
+            _replaceMissingCharacters = settings._replaceMissingCharacters;
+            _missingCharacterReplacement = settings._missingCharacterReplacement;
+            _fontFallback = settings._fontFallback;
+        }
+
+        public Builder setCacheStylesheets(boolean cacheStylesheets) {
+            _cacheStylesheets = cacheStylesheets;
+            return this;
+        }
+
+        public Builder setDrawBackgrounds(boolean drawBackgrounds) {
+            _drawBackgrounds = drawBackgrounds;
+            return this;
+        }
+
+        public Builder setReplaceMissingCharacters(boolean replaceMissingCharacters) {
+            _replaceMissingCharacters = replaceMissingCharacters;
+            return this;
+        }
+
+        public Builder setMissingCharacterReplacement(char missingCharacterReplacement) {
+            _missingCharacterReplacement = missingCharacterReplacement;
+            return this;
+        }
+
+        public Builder setFontFallback(boolean fontFallback) {
+            _fontFallback = fontFallback;
+            return this;
+        }
+
+        public RendererSettings build() {
+            return new RendererSettings(this);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
@@ -54,6 +55,7 @@ import org.xhtmlrenderer.render.FSFontMetrics;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
 /**
@@ -104,7 +106,14 @@ public class SharedContext {
 
     private int dotsPerPixel = 1;
 
-    private Map<Element, CalculatedStyle> styleMap;
+    private volatile Map<Element, CalculatedStyle> styleMap;
+    
+    private boolean parallelStyleResolution = Configuration.isTrue("xr.layout.parallel-styles", false);
+
+    private RendererSettings rendererSettings = RendererSettings.getDefault();
+
+    // set once generated content of the document has used counter() or counters()
+    private volatile boolean counterFunctionsUsed;
 
     private ReplacedElementFactory replacedElementFactory;
     private Rectangle temp_canvas;
@@ -362,21 +371,21 @@ public class SharedContext {
         return namespaceHandler;
     }
 
-    public void addBoxId(String id, Box box) {
+    public synchronized void addBoxId(String id, Box box) {
         if (idMap == null) {
             idMap = new HashMap<String, Box>();
         }
         idMap.put(id, box);
     }
 
-    public Box getBoxById(String id) {
+    public synchronized Box getBoxById(String id) {
         if (idMap == null) {
             idMap = new HashMap<String, Box>();
         }
         return idMap.get(id);
     }
 
-    public void removeBoxId(String id) {
+    public synchronized void removeBoxId(String id) {
         if (idMap != null) {
             idMap.remove(id);
         }
@@ -599,8 +608,15 @@ public class SharedContext {
     }
 
     public CalculatedStyle getStyle(Element e, boolean restyle) {
+        Map<Element, CalculatedStyle> styleMap = this.styleMap;
         if (styleMap == null) {
-            styleMap = new HashMap<Element, CalculatedStyle>(1024, 0.75f);
+            synchronized (this) {
+                styleMap = this.styleMap;
+                if (styleMap == null) {
+                    styleMap = new ConcurrentHashMap<Element, CalculatedStyle>(1024, 0.75f);
+                    this.styleMap = styleMap;
+                }
+            }
         }
 
         CalculatedStyle result = null;
@@ -633,9 +649,66 @@ public class SharedContext {
         return result;
     }
 
+    /**
+     * The settings the renderer uses, read from the configuration unless
+     * replaced.
+     */
+    public RendererSettings getRendererSettings() {
+        return rendererSettings;
+    }
+
+    public void setRendererSettings(RendererSettings rendererSettings) {
+        this.rendererSettings = rendererSettings;
+    }
+
+    /**
+     * Whether all styles are computed concurrently before layout starts
+     * (see {@link ParallelStyleResolver}) instead of lazily during layout.
+     */
+    public boolean isParallelStyleResolution() {
+        return parallelStyleResolution;
+    }
+
+    public void setParallelStyleResolution(boolean parallelStyleResolution) {
+        this.parallelStyleResolution = parallelStyleResolution;
+    }
+
+    /**
+     * Discards the computed styles of <code>e</code> and its descendants so
+     * they are computed again, from the current state of the document, the
+     * next time they are asked for. To be called when a change to the
+     * document may have changed which rules match these elements.
+     */
+    public void invalidateStyles(Element e) {
+        Map<Element, CalculatedStyle> styleMap = this.styleMap;
+        if (styleMap != null) {
+            styleMap.remove(e);
+        }
+        getCss().removeStyle(e);
+
+        for (Element child : e.children()) {
+            invalidateStyles(child);
+        }
+    }
+
+    /**
+     * Whether generated content of the current document refers to CSS
+     * counters. Counter values depend on everything that comes before an
+     * element in the document, so parts of the box tree can't be rebuilt on
+     * their own.
+     */
+    public boolean isCounterFunctionsUsed() {
+        return counterFunctionsUsed;
+    }
+
+    public void setCounterFunctionsUsed(boolean counterFunctionsUsed) {
+        this.counterFunctionsUsed = counterFunctionsUsed;
+    }
+
     public void reset() {
        styleMap = null;
        idMap = null;
+       counterFunctionsUsed = false;
        replacedElementFactory.reset();
     }
 
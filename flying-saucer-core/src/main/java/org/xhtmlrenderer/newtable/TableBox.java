@@ -21,6 +21,7 @@ package org.xhtmlrenderer.newtable;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -51,6 +52,7 @@ import org.xhtmlrenderer.util.XRLog;
 public class TableBox extends BlockBox {
     private final List<ColumnData> _columns = new ArrayList<ColumnData>();
     private int[] _columnPos;
+    private boolean _columnPosChanged = true;
     private TableLayout _tableLayout;
 
     private List<TableColumn> _styleColumns;
@@ -230,9 +232,15 @@ public class TableBox extends BlockBox {
             calcDimensions(c, getContentWidth());
         }
 
+        int[] previousColumnPos = _columnPos;
         _tableLayout.layout(c);
+        _columnPosChanged = ! Arrays.equals(previousColumnPos, _columnPos);
 
-        setCellWidths(c);
+        // Sections that are laid out again set their cell widths themselves,
+        // so this only matters for those kept by an incremental relayout
+        if (_columnPosChanged) {
+            setCellWidths(c);
+        }
 
         layoutTable(c);
     }
@@ -291,6 +299,10 @@ public class TableBox extends BlockBox {
         }
     }
 
+    protected boolean isChildrenLayoutValid(LayoutContext c) {
+        return ! _columnPosChanged && super.isChildrenLayoutValid(c);
+    }
+
     protected void layoutChildren(LayoutContext c, int contentStart) {
         ensureChildren(c);
         // If we have a running footer, we need its dimensions right away
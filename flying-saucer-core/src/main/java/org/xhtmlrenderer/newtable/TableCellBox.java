@@ -58,6 +58,9 @@ public class TableCellBox extends BlockBox {
     private CollapsedBorderValue _collapsedBorderBottom;
     private CollapsedBorderValue _collapsedBorderLeft;
     
+    // how far the content has been moved (to align it) since it was laid out
+    private int _contentDeltaY;
+    
     // 'double', 'solid', 'dashed', 'dotted', 'ridge', 'outset', 'groove', and the lowest: 'inset'. 
     private static final int[] BORDER_PRIORITIES = new int[IdentValue.getIdentCount()];
     
@@ -212,6 +215,7 @@ public class TableCellBox extends BlockBox {
     }
     
     public void moveContent(LayoutContext c, final int deltaY) {
+        _contentDeltaY += deltaY;
         for (int i = 0; i < getChildCount(); i++) {
             Box b = getChild(i);
             b.setY(b.getY() + deltaY);
@@ -227,6 +231,18 @@ public class TableCellBox extends BlockBox {
         calcChildLocations();
     }
     
+    public void reset(LayoutContext c) {
+        super.reset(c);
+        if (isChildrenLayoutKept()) {
+            // put kept content back where it was laid out, the row aligns it again
+            for (int i = 0; i < getChildCount(); i++) {
+                Box b = getChild(i);
+                b.setY(b.getY() - _contentDeltaY);
+            }
+        }
+        _contentDeltaY = 0;
+    }
+    
     public boolean isPageBreaksChange(LayoutContext c, int posDeltaY) {
         if (! c.isPageBreaksAllowed()) {
             return false;
@@ -477,6 +477,11 @@ public class TableRowBox extends BlockBox {
         // painted at the cell level
     }   
     
+    protected boolean isChildrenLayoutKeepable(LayoutContext c) {
+        // the cells are positioned by the table's columns
+        return false;
+    }
+    
     public void reset(LayoutContext c) {
         super.reset(c);
         setHaveBaseline(false);
@@ -184,6 +184,11 @@ public class TableSectionBox extends BlockBox {
         cell.setCol(getTable().effColToCol(col));
     }
     
+    protected boolean isChildrenLayoutKeepable(LayoutContext c) {
+        // the cells are positioned by the table's columns
+        return false;
+    }
+    
     public void reset(LayoutContext c) {
         super.reset(c);
         _grid.clear();
@@ -40,7 +40,6 @@ import org.xhtmlrenderer.css.style.derived.LengthValue;
 import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.extend.OutputDevice;
-import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.Uu;
 
 /**
@@ -207,7 +206,7 @@ public abstract class AbstractOutputDevice implements OutputDevice {
             RenderingContext c, CalculatedStyle style,
             Rectangle backgroundBounds, Rectangle bgImageContainer,
             BorderPropertySet border) {
-        if (!Configuration.isTrue("xr.renderer.draw.backgrounds", true)) {
+        if (!c.getRendererSettings().isDrawBackgrounds()) {
             return;
         }
 
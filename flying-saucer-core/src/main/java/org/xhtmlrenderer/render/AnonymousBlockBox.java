@@ -44,7 +44,11 @@ public class AnonymousBlockBox extends BlockBox {
     }
 
     public void layout(LayoutContext c) {
-        layoutInlineChildren(c, 0, calcInitialBreakAtLine(c), true);
+        layoutOrKeepChildren(c, 0);
+    }
+
+    protected void layoutChildren(LayoutContext c, int contentStart) {
+        layoutInlineChildren(c, contentStart, calcInitialBreakAtLine(c), true);
     }
 
     public int getContentWidth() {
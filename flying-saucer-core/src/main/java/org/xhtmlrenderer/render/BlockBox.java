@@ -46,6 +46,7 @@ import org.xhtmlrenderer.layout.CounterFunction;
 import org.xhtmlrenderer.layout.FloatManager;
 import org.xhtmlrenderer.layout.InlineBoxing;
 import org.xhtmlrenderer.layout.InlinePaintable;
+import org.xhtmlrenderer.layout.Layer;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.layout.PersistentBFC;
@@ -92,6 +93,21 @@ public class BlockBox extends Box implements InlinePaintable {
     private int _minWidth;
     private int _maxWidth;
     private boolean _minMaxCalculated;
+    private boolean _minMaxWidthFixed;
+
+    // The content width the children were last laid out at, i.e. their
+    // containing block width (-1 if their layout can't be kept on a relayout
+    // after a viewport resize), the offset they started at and the height
+    // they took, see LayoutContext.isIncrementalRelayout()
+    private int _childrenLayoutWidth = -1;
+    private int _childrenLayoutStart;
+    private int _childrenLayoutHeight;
+    // Set by reset() when it leaves the children as they are, until layout()
+    // can tell whether their layout is still valid
+    private boolean _childrenLayoutKept;
+
+    // The child boxes no longer match the document, see invalidateChildren()
+    private boolean _childrenInvalid;
 
     private boolean _dimensionsCalculated;
     private boolean _needShrinkToFitCalculatation;
@@ -545,18 +561,36 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public void reset(LayoutContext c) {
+        // On a relayout caused by a viewport resize the children are kept
+        // until layout can tell whether their layout is still valid
+        _childrenLayoutKept = c.isIncrementalRelayout() && isChildrenLayoutKeepable(c);
+
         super.reset(c);
         setTopMarginCalculated(false);
         setBottomMarginCalculated(false);
         setDimensionsCalculated(false);
-        setMinMaxCalculated(false);
+        if (! (c.isIncrementalRelayout() && _minMaxWidthFixed)) {
+            setMinMaxCalculated(false);
+        }
         setChildrenHeight(0);
         if (isReplaced()) {
             getReplacedElement().detach(c);
             setReplacedElement(null);
         }
-        if (getChildrenContentType() == BlockBox.CONTENT_INLINE) {
+        if (! _childrenLayoutKept) {
+            if (getChildrenContentType() == BlockBox.CONTENT_INLINE) {
+                removeAllChildren();
+            }
+            _childrenLayoutWidth = -1;
+        }
+
+        if (_childrenInvalid) {
+            _childrenInvalid = false;
             removeAllChildren();
+            setInlineContent(null);
+            setChildrenContentType(BlockBox.CONTENT_UNKNOWN);
+            // so the new children find the counter scope of this block
+            c.resolveCounters(getStyle());
         }
 
         if (isFloated()) {
@@ -775,6 +809,8 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public void layout(LayoutContext c, int contentStart) {
+        c.checkCancelled();
+
         CalculatedStyle style = getStyle();
 
         boolean pushedLayer = false;
@@ -842,7 +878,7 @@ public class BlockBox extends Box implements InlinePaintable {
         setTy(ty);
         c.translate(getTx(), getTy());
         if (! isReplaced())
-            layoutChildren(c, contentStart);
+            layoutOrKeepChildren(c, contentStart);
         else {
             setState(Box.DONE);
         }
@@ -940,12 +976,100 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    /**
+     * Marks the child boxes of this block as out of date (after a change to
+     * the document). They are discarded when the block is next reset and
+     * created again from the document during the following layout. Layout
+     * results kept for this block and its ancestors across relayouts are
+     * dropped as well.
+     */
+    public void invalidateChildren() {
+        _childrenInvalid = true;
+        for (Box b = this; b != null; b = b.getParent()) {
+            if (b instanceof BlockBox) {
+                BlockBox block = (BlockBox) b;
+                block._childrenLayoutWidth = -1;
+                block._minMaxWidthFixed = false;
+            }
+        }
+    }
+
     public void ensureChildren(LayoutContext c) {
         if (getChildrenContentType() == CONTENT_UNKNOWN) {
             BoxBuilder.createChildren(c, this);
         }
     }
 
+    protected void resetChildren(LayoutContext c) {
+        if (! _childrenLayoutKept) {
+            super.resetChildren(c);
+        }
+    }
+
+    /**
+     * Whether reset() may leave the children as they are on a relayout after
+     * a viewport resize: their layout was recorded and computing the margins
+     * of this block (and collapsing them with its parent and siblings) never
+     * looks at the children.
+     */
+    protected boolean isChildrenLayoutKeepable(LayoutContext c) {
+        if (_childrenLayoutWidth == -1 || _childrenInvalid || isReplaced()) {
+            return false;
+        }
+        if (isMayCollapseMarginsWithChildren() &&
+                (isNoTopPaddingOrBorder(c) || (! getStyle().isTable() && isNoBottomPaddingOrBorder(c)))) {
+            return false;
+        }
+        return ! isVerticalMarginsAdjoin(c);
+    }
+
+    /**
+     * Whether the children kept by reset() are laid out as they would be
+     * now. This is the case if the content width (the containing block
+     * width of the children) is the same as when they were laid out.
+     */
+    protected boolean isChildrenLayoutValid(LayoutContext c) {
+        return getContentWidth() == _childrenLayoutWidth;
+    }
+
+    protected boolean isChildrenLayoutKept() {
+        return _childrenLayoutKept;
+    }
+
+    /**
+     * Lays out the children, unless reset() has kept them and their layout
+     * is still valid, in which case they are only moved to their new
+     * position.
+     */
+    protected void layoutOrKeepChildren(LayoutContext c, int contentStart) {
+        boolean independent = isChildrenLayoutIndependent(c);
+        if (_childrenLayoutKept) {
+            _childrenLayoutKept = false;
+            if (independent && contentStart == _childrenLayoutStart && isChildrenLayoutValid(c)) {
+                keepChildrenLayout(c);
+                return;
+            }
+            resetChildren(c);
+            if (getChildrenContentType() == CONTENT_INLINE) {
+                removeAllChildren();
+            }
+        }
+
+        int layers = c.getLayer().getChildren().size();
+
+        // not recorded until the children are completely laid out
+        _childrenLayoutWidth = -1;
+        layoutChildren(c, contentStart);
+
+        if (independent && isChildrenLayoutSimple() &&
+                layers == c.getLayer().getChildren().size() &&
+                ! c.getBlockFormattingContext().getFloatManager().hasFloats()) {
+            _childrenLayoutWidth = getContentWidth();
+            _childrenLayoutStart = contentStart;
+            _childrenLayoutHeight = getHeight();
+        }
+    }
+
     protected void layoutChildren(LayoutContext c, int contentStart) {
         setState(Box.CHILDREN_FLUX);
         ensureChildren(c);
@@ -976,6 +1100,124 @@ public class BlockBox extends Box implements InlinePaintable {
         setState(Box.DONE);
     }
 
+    /**
+     * Whether the layout of the children only depends on the content width
+     * of this block, i.e. there are no floats, pages, list markers or
+     * first-line/letter styles that could affect it.
+     */
+    private boolean isChildrenLayoutIndependent(LayoutContext c) {
+        return ! c.isPrint() &&
+                getFirstLineStyle() == null && getFirstLetterStyle() == null &&
+                ! c.getFirstLinesTracker().hasStyles() &&
+                ! c.getFirstLettersTracker().hasStyles() &&
+                c.getCurrentMarkerData() == null &&
+                ! c.getBlockFormattingContext().getFloatManager().hasFloats();
+    }
+
+    /**
+     * Whether the children (just laid out) can be kept as they are when this
+     * block is laid out again at the same width: they are line boxes with
+     * (unpositioned) inline boxes and text, or blocks whose own children can
+     * be kept, without layers, floats, replaced content, list markers or
+     * min/max widths that depend on the containing block.
+     */
+    private boolean isChildrenLayoutSimple() {
+        switch (getChildrenContentType()) {
+            case CONTENT_INLINE:
+                return isSimpleInlineLayout();
+            case CONTENT_BLOCK:
+                for (int i = 0; i < getChildCount(); i++) {
+                    Box child = getChild(i);
+                    if (! (child instanceof BlockBox)) {
+                        return false;
+                    }
+                    BlockBox block = (BlockBox) child;
+                    CalculatedStyle style = block.getStyle();
+                    if (block._childrenLayoutWidth == -1 || block.isReplaced() ||
+                            block.getLayer() != null || style.isFloated() ||
+                            style.isListItem() || style.isFixedBackground() ||
+                            (block.isMinMaxCalculated() && ! block._minMaxWidthFixed)) {
+                        return false;
+                    }
+                }
+                return true;
+            case CONTENT_EMPTY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Whether the line boxes only contain (unpositioned) inline boxes and
+     * text.
+     */
+    private boolean isSimpleInlineLayout() {
+        for (int i = 0; i < getChildCount(); i++) {
+            Box child = getChild(i);
+            if (! (child instanceof LineBox) || ((LineBox) child).isContainsDynamicFunction()) {
+                return false;
+            }
+            for (int j = 0; j < child.getChildCount(); j++) {
+                if (! isSimpleInlineBox(child.getChild(j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSimpleInlineBox(Box box) {
+        if (! (box instanceof InlineLayoutBox) || box.getLayer() != null) {
+            return false;
+        }
+        InlineLayoutBox iB = (InlineLayoutBox) box;
+        for (int i = 0; i < iB.getInlineChildCount(); i++) {
+            Object child = iB.getInlineChild(i);
+            if (child instanceof Box && ! isSimpleInlineBox((Box) child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the children from the previous layout back in place (with their
+     * positions relative to this block and their heights) instead of laying
+     * them out again.
+     */
+    private void keepChildrenLayout(LayoutContext c) {
+        setHeight(_childrenLayoutHeight);
+        Layer layer = c.getLayer();
+        for (int i = 0; i < getChildCount(); i++) {
+            reconnectKeptBox(getChild(i), layer);
+        }
+        calcChildLocations();
+        setState(Box.DONE);
+    }
+
+    /**
+     * Moves a kept box and its descendants to the current layer. Their
+     * painting info is moved along with them when it is next needed, see
+     * calcPaintingInfo().
+     */
+    private static void reconnectKeptBox(Box box, Layer layer) {
+        box.setContainingLayer(layer);
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    reconnectKeptBox((Box) child, layer);
+                }
+            }
+        } else {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                reconnectKeptBox(box.getChild(i), layer);
+            }
+        }
+    }
+
     protected void layoutInlineChildren(
             LayoutContext c, int contentStart, int breakAtLine, boolean tryAgain) {
         InlineBoxing.layoutContent(c, this, contentStart, breakAtLine);
@@ -1557,10 +1799,47 @@ public class BlockBox extends Box implements InlinePaintable {
                 calcMinMaxCSSMinMaxWidth(c, margin, border, padding);
             }
 
+            _minMaxWidthFixed = isMinMaxWidthIndependent();
+
             setMinMaxCalculated(true);
         }
     }
 
+    /**
+     * Whether the min/max widths just calculated would come out the same for
+     * any containing block width (and so survive a viewport resize).
+     */
+    private boolean isMinMaxWidthIndependent() {
+        if (isReplaced() || getStyle().isListItem() || getStyle().hasPercentageWidthMetrics()) {
+            return false;
+        }
+        switch (getChildrenContentType()) {
+            case CONTENT_BLOCK:
+                for (int i = 0; i < getChildCount(); i++) {
+                    Box child = getChild(i);
+                    if (! (child instanceof BlockBox) || ! ((BlockBox) child)._minMaxWidthFixed) {
+                        return false;
+                    }
+                }
+                return true;
+            case CONTENT_INLINE:
+                if (_inlineContent == null) {
+                    return false;
+                }
+                for (Iterator<Styleable> i = _inlineContent.iterator(); i.hasNext();) {
+                    Styleable child = (Styleable) i.next();
+                    if (! (child instanceof InlineBox) || child.getStyle().hasPercentageWidthMetrics()) {
+                        return false;
+                    }
+                }
+                return true;
+            case CONTENT_EMPTY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private ReplacedElement fitReplacedElement(LayoutContext c,
             ReplacedElement re)
     {
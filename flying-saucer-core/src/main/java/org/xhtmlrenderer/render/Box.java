@@ -781,10 +781,15 @@ public abstract class Box implements Styleable {
     public PaintingInfo calcPaintingInfo(CssContext c, boolean useCache) {
         PaintingInfo cached = getPaintingInfo();
         if (cached != null && useCache) {
+            if (cached.getX() != getAbsX() || cached.getY() != getAbsY()) {
+                // moved as a whole since, e.g. kept by an incremental relayout
+                translatePaintingInfo(getAbsX() - cached.getX(), getAbsY() - cached.getY());
+            }
             return cached;
         }
 
         final PaintingInfo result = new PaintingInfo();
+        result.setLocation(getAbsX(), getAbsY());
 
         Rectangle bounds = getMarginEdge(getAbsX(), getAbsY(), c, 0, 0);
         result.setOuterMarginCorner(
@@ -811,6 +816,15 @@ public abstract class Box implements Styleable {
         }
     }
 
+    protected void translatePaintingInfo(int tx, int ty) {
+        if (_paintingInfo != null) {
+            _paintingInfo.translate(tx, ty);
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            getChild(i).translatePaintingInfo(tx, ty);
+        }
+    }
+
     public int getMarginBorderPadding(CssContext cssCtx, int which) {
         BorderPropertySet border = getBorder(cssCtx);
         RectPropertySet margin = getMargin(cssCtx);
@@ -702,6 +702,18 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
         }
     }
     
+    protected void translatePaintingInfo(int tx, int ty) {
+        if (getPaintingInfo() != null) {
+            getPaintingInfo().translate(tx, ty);
+        }
+        for (int i = 0; i < getInlineChildCount(); i++) {
+            Object obj = getInlineChild(i);
+            if (obj instanceof Box) {
+                ((Box)obj).translatePaintingInfo(tx, ty);
+            }
+        }
+    }
+    
     protected void calcChildPaintingInfo(
             CssContext c, PaintingInfo result, boolean useCache) {
         for (int i = 0; i < getInlineChildCount(); i++) {
@@ -24,8 +24,11 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 
 import org.jsoup.nodes.Element;
@@ -325,7 +328,11 @@ public class PageBox {
                         c, this, additionalClearance, mode);
                 
                 c.getOutputDevice().translate(p.x, p.y);
-                table.getLayer().paint(c);
+                // The table may be shared with other pages, which update
+                // their page counters in it while painting
+                synchronized (table) {
+                    table.getLayer().paint(c);
+                }
                 c.getOutputDevice().translate(-p.x, -p.y);
             }
         }
@@ -365,9 +372,59 @@ public class PageBox {
     }
     
     public void layout(LayoutContext c) {
+        layout(c, null);
+    }
+
+    /**
+     * Lays out the page's margin areas, reusing the ones laid out for an
+     * earlier page with the same margin boxes, size and running elements
+     * from <code>cache</code>. Page counters are only measured when painting,
+     * so they don't prevent sharing.
+     */
+    public void layout(LayoutContext c, MarginAreaCache cache) {
         c.setPage(this);
         retrievePageMetadata(c);
-        layoutMarginAreas(c);
+        if (cache == null) {
+            layoutMarginAreas(c);
+        } else {
+            List<Object> key = createMarginAreaKey(c);
+            MarginAreaContainer[] marginAreas = cache._marginAreas.get(key);
+            if (marginAreas == null) {
+                layoutMarginAreas(c);
+                cache._marginAreas.put(key, _marginAreas);
+                cache._layoutCount++;
+            } else {
+                _marginAreas = marginAreas;
+                cache._reuseCount++;
+            }
+        }
+    }
+
+    // Everything the margin area layout depends on. The declarations of a
+    // page rule are the same objects for every page it applies to.
+    private List<Object> createMarginAreaKey(LayoutContext c) {
+        List<Object> result = new ArrayList<Object>();
+        result.add(_pageInfo.getProperties());
+        result.add(_pageInfo.getMarginBoxes());
+        result.add(Integer.valueOf(getWidth(c)));
+        result.add(Integer.valueOf(getHeight(c)));
+        for (List<PropertyDeclaration> decls : _pageInfo.getMarginBoxes().values()) {
+            for (PropertyDeclaration decl : decls) {
+                if (decl.getCSSName() == CSSName.CONTENT) {
+                    List<?> values = ((PropertyValue) decl.getValue()).getValues();
+                    if (values != null) {
+                        for (Object value : values) {
+                            PropertyValue funcVal = (PropertyValue) value;
+                            if (funcVal.getPropertyValueType() == PropertyValueImp.VALUE_TYPE_FUNCTION &&
+                                    BoxBuilder.isElementFunction(funcVal.getFunction())) {
+                                result.add(new IdentityKey(BoxBuilder.getRunningBlock(c, funcVal)));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
     }
     
     // HACK Would much prefer to do this in ITextRenderer or ITextOutputDevice
@@ -477,6 +534,48 @@ public class PageBox {
         }
     }
     
+    /**
+     * The margin areas laid out for the pages of one document, see
+     * {@link PageBox#layout(LayoutContext, MarginAreaCache)}.
+     */
+    public static final class MarginAreaCache {
+        private final Map<List<Object>, MarginAreaContainer[]> _marginAreas =
+                new HashMap<List<Object>, MarginAreaContainer[]>();
+
+        private int _layoutCount;
+        private int _reuseCount;
+
+        /**
+         * The number of pages whose margin areas were laid out.
+         */
+        public int getLayoutCount() {
+            return _layoutCount;
+        }
+
+        /**
+         * The number of pages that reused the margin areas of another page.
+         */
+        public int getReuseCount() {
+            return _reuseCount;
+        }
+    }
+
+    private static final class IdentityKey {
+        private final Object _object;
+
+        IdentityKey(Object object) {
+            _object = object;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o)._object == _object;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(_object);
+        }
+    }
+
     private static class MarginAreaContainer {
         private final MarginArea _area;
         private final TableBox _table;
@@ -26,6 +26,7 @@ import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.extend.*;
 import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.RendererSettings;
 import org.xhtmlrenderer.layout.SharedContext;
 
 /**
@@ -96,6 +97,10 @@ public class RenderingContext implements CssContext {
         return sharedContext.getTextRenderer();
     }
 
+    public RendererSettings getRendererSettings() {
+        return sharedContext.getRendererSettings();
+    }
+
     /**
      * Returns true if the currently set media type is paged. Currently returns
      * true only for <i>print</i> , <i>projection</i> , and <i>embossed</i> ,
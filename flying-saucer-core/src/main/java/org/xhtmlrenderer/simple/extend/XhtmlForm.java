@@ -128,6 +128,21 @@ public class XhtmlForm {
         return field;
     }
     
+    /**
+     * Removes the fields of elements that are no longer part of a document.
+     */
+    public void removeDetached() {
+        // An element's hash code changes with its parent, so the fields are
+        // copied rather than removed by key
+        Map<Element, FormField> retained = new LinkedHashMap<Element, FormField>();
+        for (Map.Entry<Element, FormField> entry : _componentCache.entrySet()) {
+            if (entry.getKey().ownerDocument() != null) {
+                retained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        _componentCache = retained;
+    }
+
     public void reset() {
         Iterator<ButtonGroupWrapper> buttonGroups = _buttonGroups.values().iterator();
         while (buttonGroups.hasNext()) {
@@ -22,7 +22,6 @@ package org.xhtmlrenderer.swing;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.xhtmlrenderer.extend.NamespaceHandler;
-import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
@@ -33,7 +32,6 @@ import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
 import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
-import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 
 import java.awt.*;
@@ -280,7 +278,7 @@ public class BoxRenderer {
 		this.doc = doc;
 
 		sharedContext.reset();
-		if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+		if (sharedContext.getRendererSettings().isCacheStylesheets()) {
 			sharedContext.getCss().flushStyleSheets();
 		} else {
 			sharedContext.getCss().flushAllStyleSheets();
@@ -334,9 +332,7 @@ public class BoxRenderer {
         AWTFontResolver fontResolver = new AWTFontResolver();
         context.setFontResolver(fontResolver);
 
-        // TODO
-        //ReplacedElementFactory replacedElementFactory = new SwingReplacedElementFactory();
-        context.setReplacedElementFactory(null);
+        context.setReplacedElementFactory(new Java2DReplacedElementFactory());
 
         context.setTextRenderer(new Java2DTextRenderer());
         context.setDPI(72 * this.dotsPerPoint);
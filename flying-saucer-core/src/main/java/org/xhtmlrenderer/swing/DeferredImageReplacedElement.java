@@ -151,9 +151,15 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
             }
             _loaded = true;
             XRLog.load(Level.FINE, "Icon: replaced image " + _imageResource.getImageUri() + ", repaint requested");
+            // Only a change of size from the placeholder requires a relayout
+            final boolean resized = _image.getWidth(null) != _targetWidth || _image.getHeight(null) != _targetHeight;
             SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
-                    repaintListener.repaintRequested(_doScaleImage);
+                    if (! resized && repaintListener instanceof ElementRepaintListener) {
+                        ((ElementRepaintListener) repaintListener).repaintRequested(DeferredImageReplacedElement.this);
+                    } else {
+                        repaintListener.repaintRequested(resized);
+                    }
                 }
             });
 
@@ -162,6 +168,13 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
         return _image;
     }
 
+    /**
+     * The resource the image is loaded into.
+     */
+    public ImageResource getImageResource() {
+        return _imageResource;
+    }
+
 	public int getBaseline() {
 		return 0;
 	}
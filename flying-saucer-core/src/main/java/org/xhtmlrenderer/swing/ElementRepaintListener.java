@@ -0,0 +1,14 @@
+package org.xhtmlrenderer.swing;
+
+import org.xhtmlrenderer.extend.ReplacedElement;
+
+/**
+ * A {@link RepaintListener} that can be told which replaced element has
+ * changed, so only the area it occupies has to be painted again.
+ */
+public interface ElementRepaintListener extends RepaintListener {
+    /**
+     * Requests a repaint of <code>element</code>, whose size has not changed.
+     */
+    void repaintRequested(ReplacedElement element);
+}
@@ -21,109 +21,154 @@ package org.xhtmlrenderer.swing;
 
 import org.xhtmlrenderer.util.XRLog;
 
-import java.util.LinkedList;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 
 
 /**
- * A thread-safe queue containing BackgroundImageLoaderItem, each of which represents one image (identified by a URI)
- * which needs to be loaded.
+ * A thread-safe queue of the images (identified by a URI) which need to be loaded. Each URI is only loaded once:
+ * requests for a URI that is already queued or being loaded are attached to the pending load. Images are handed
+ * out in order of their priority (see {@link #setPriorities(Map)}), and in the order they were requested among
+ * images of equal priority.
  */
 class ImageLoadQueue {
-    // marker queue item which, if read, means the reading threads should simply stop their polling
-    // introduced by kill()
-    private static final ImageLoadItem KILL_SWITCH = new ImageLoadItem(null, null, null, -1, -1);
+    // items to be loaded, by URI, in the order requested
+    private final Map<String, List<ImageLoadItem>> _pending;
 
-    // list of items to be loaded
-    private final java.util.LinkedList<ImageLoadItem> _loadQueue;
+    // items whose URI is currently being loaded
+    private final Map<String, List<ImageLoadItem>> _inFlight;
+
+    private Map<String, Integer> _priorities;
 
     /**
      * Intantiates a new queue.
      */
     public ImageLoadQueue() {
-        this._loadQueue = new LinkedList<ImageLoadItem>();
+        this._pending = new LinkedHashMap<String, List<ImageLoadItem>>();
+        this._inFlight = new HashMap<String, List<ImageLoadItem>>();
+        this._priorities = new HashMap<String, Integer>();
     }
 
     /**
      * Queues a new item to be loaded. Thread-safe.
      *
+     * @param imageResourceLoader
      * @param uri URI of the item to be loaded. As there is no good way of reporting failures, you should ensure
      *            the URI is a proper URL before calling this method.
-     * @param re  container for the image to be loaded; will be updated via
-     *            {@link MutableFSImage#setImage(String,java.awt.Image,boolean)} once image is loaded
-    public synchronized void addToQueue(String uri, MutableFSImage re) {
-        this.addToQueue(uri, re, -1, -1);
-    }
+     * @return true if a new load has to be started for the URI, false if the item was attached to a load already
+     *         queued or running
      */
+    public synchronized boolean addToQueue(final ImageResourceLoader imageResourceLoader, final String uri, final MutableFSImage mfsi, final int width, final int height) {
+        ImageLoadItem item = new ImageLoadItem(imageResourceLoader, uri, mfsi, width, height);
 
+        List<ImageLoadItem> items = _inFlight.get(uri);
+        if (items == null) {
+            items = _pending.get(uri);
+        }
+        if (items != null) {
+            XRLog.general(Level.FINE, "Image uri " + uri + " already queued, attaching to the pending load");
+            items.add(item);
+            return false;
+        }
 
-    /**
-     * Queues a new item to be loaded. Thread-safe.
-     *
-     * @param imageResourceLoader
-     * @param uri URI of the item to be loaded. As there is no good way of reporting failures, you should ensure
-     *            the URI is a proper URL before calling this method.
-     */
-    public synchronized void addToQueue(final ImageResourceLoader imageResourceLoader, final String uri, final MutableFSImage mfsi, final int width, final int height) {
         XRLog.general(Level.FINE, "Queueing load for image uri " + uri);
-        _loadQueue.addLast(new ImageLoadItem(imageResourceLoader, uri, mfsi, width, height));
-        notifyAll();
+        items = new ArrayList<ImageLoadItem>(1);
+        items.add(item);
+        _pending.put(uri, items);
+        return true;
     }
 
     /**
-     * Returns the next available task from the queue, or blocks if there are no more; items are returned in FIFO order.
-     * If none are available, the method will block until the next items is pushed into the queue.
+     * Returns the URI of the next image to load, the one with the lowest priority value, and marks it as being
+     * loaded. Each call must be followed by a call to {@link #finished(String)} once the image has been loaded.
      *
-     * @return an ImageLoadItem
-     * @throws InterruptedException if the wait (block) was interrupted externally
+     * @return the URI, or null if the queue is empty (e.g. because it has been reset)
      */
-    public synchronized ImageLoadItem getTask() throws InterruptedException {
-        while (_loadQueue.isEmpty()) {
-            wait();
+    public synchronized String getTask() {
+        String next = null;
+        int nextPriority = Integer.MAX_VALUE;
+        for (String uri : _pending.keySet()) {
+            int priority = getPriority(uri);
+            if (next == null || priority < nextPriority) {
+                next = uri;
+                nextPriority = priority;
+                if (priority <= 0) {
+                    break;
+                }
+            }
         }
-        if (_loadQueue.getLast() == KILL_SWITCH) {
-            XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " requested item, but queue is shutting down; returning kill switch.");
-            return KILL_SWITCH;
-        } else {
-            ImageLoadItem item = _loadQueue.removeLast();
 
+        if (next != null) {
+            _inFlight.put(next, _pending.remove(next));
             XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " pulled item " + item._uri + " from queue, " + (_loadQueue.size() - 1) + " remaining");
-            return item;
+                    " pulled item " + next + " from queue, " + _pending.size() + " remaining");
         }
+        return next;
+    }
+
+    private int getPriority(String uri) {
+        Integer priority = _priorities.get(uri);
+        return priority == null ? Integer.MAX_VALUE : priority.intValue();
     }
 
     /**
-     * Removes all items currently in the queue.
+     * Returns the largest size the items waiting for the image being loaded from <code>uri</code> want it at, or
+     * null if any of them needs it at its original size.
      */
-    public synchronized void reset() {
-        _loadQueue.clear();
+    public synchronized Dimension getTargetSize(String uri) {
+        List<ImageLoadItem> items = _inFlight.get(uri);
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        Dimension result = new Dimension(0, 0);
+        for (ImageLoadItem item : items) {
+            if (!item.haveTargetDimensions()) {
+                return null;
+            }
+            result.width = Math.max(result.width, item._targetWidth);
+            result.height = Math.max(result.height, item._targetHeight);
+        }
+        return result;
     }
 
     /**
-     * Indicates that no more items will be added to the queue, no more items currently in the queue will be loaded,
-     * and that worker threads polling this queue should shut down.
+     * Marks the load of <code>uri</code> as finished.
+     *
+     * @return the items waiting for the image; empty if the queue has been reset in the meantime
      */
-    public synchronized void kill() {
-        _loadQueue.addLast(KILL_SWITCH);
-        notifyAll();
+    public synchronized List<ImageLoadItem> finished(String uri) {
+        List<ImageLoadItem> items = _inFlight.remove(uri);
+        return items == null ? new ArrayList<ImageLoadItem>(0) : items;
     }
 
     /**
-     * Returns true if the item, retrieved from the queue via {@link #getTask()}, is a kill switch, meaning the worker
-     * that retrieved it should stop polling.
-     *
-     * @param queueItem an item retrieved from the queue.
-     * @return true if the item, retrieved from the queue via {@link #getTask()}, is a kill switch, meaning the worker
-     *         that retrieved it should stop polling.
+     * Sets the priority of queued images by URI: lower values are loaded first. Images without a priority are
+     * loaded last.
      */
-    public static boolean isKillSwitch(Object queueItem) {
-        return queueItem == KILL_SWITCH;
+    public synchronized void setPriorities(Map<String, Integer> priorities) {
+        _priorities = new HashMap<String, Integer>(priorities);
+    }
+
+    /**
+     * Removes all items currently in the queue. Images currently being loaded are still loaded (and cached), but
+     * no longer handed to the items waiting for them.
+     */
+    public synchronized void reset() {
+        _pending.clear();
+        for (Iterator<List<ImageLoadItem>> i = _inFlight.values().iterator(); i.hasNext(); ) {
+            i.next().clear();
+        }
+        _priorities = new HashMap<String, Integer>();
     }
 
-    public int size() {
-        return _loadQueue.size();
+    public synchronized int size() {
+        return _pending.size();
     }
 }
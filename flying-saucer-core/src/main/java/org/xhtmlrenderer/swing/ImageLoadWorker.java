@@ -26,62 +26,98 @@ import org.xhtmlrenderer.util.XRLog;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.logging.Level;
 
 
 /**
- * A background thread (daemon, low priority) which reads BackgroundImageLoaderItem from a BackgroundImageQueue
- * and loads the images into memory. Once images have loaded, the item's MutableFSImage will receive the newly loaded
- * image via setImage(newImage). Images, once loaded, are always BufferedImages and will always be compatible with
- * the current screen's graphics configuration. If an image cannot be loaded (network failure), a 1 x 1 pixel image
- * will be returned instead and the problem will be logged.
+ * A task, run on the image loading pool of an {@link ImageResourceLoader}, which takes the most urgent image from
+ * an {@link ImageLoadQueue} and loads it into memory; one task is submitted for each image queued. Once the image
+ * has loaded, the MutableFSImage of every item waiting for it will receive the newly loaded image via setImage(newImage).
+ * Images, once loaded, are always BufferedImages and will always be compatible with the current screen's graphics
+ * configuration. If an image cannot be loaded (network failure), a 1 x 1 pixel image will be returned instead and
+ * the problem will be logged.
  */
-class ImageLoadWorker extends Thread {
-    private static volatile int counter = 0;
+class ImageLoadWorker implements Runnable {
+    private final ImageResourceLoader imageResourceLoader;
     private final ImageLoadQueue queue;
 
-    public ImageLoadWorker(ImageLoadQueue queue) {
+    public ImageLoadWorker(ImageResourceLoader imageResourceLoader, ImageLoadQueue queue) {
+        this.imageResourceLoader = imageResourceLoader;
         this.queue = queue;
-        setDaemon(true);
-        setPriority(Thread.MIN_PRIORITY);
-        setName("ImageLoadWorker(" + counter++ + ")");
     }
 
     public void run() {
-        try {
-            while (true) {
-                final ImageLoadItem loadItem = queue.getTask();
+        final String uri = queue.getTask();
+        if (uri == null) {
+            // the queue was reset
+            return;
+        }
 
-                if (ImageLoadQueue.isKillSwitch(loadItem)) {
-                    break;
-                }
-                final ImageResource ir = ImageResourceLoader.loadImageResourceFromUri(loadItem._uri);
-                FSImage awtfsImage = ir.getImage();
-                BufferedImage newImg = (BufferedImage) ((AWTFSImage) awtfsImage).getImage();
-                XRLog.load(Level.FINE, this + ", loaded " + loadItem._uri);
+        // if all waiting items have a size, the image is decoded at a reduced
+        // resolution; only an image at its original size can serve later
+        // requests for other sizes
+        Dimension targetSize = queue.getTargetSize(uri);
+        ImageResource ir = load(uri, targetSize);
+        BufferedImage img = getImage(ir);
+        if (targetSize == null) {
+            // cache before collecting the waiting items, later requests will find the image there
+            imageResourceLoader.loaded(ir, -1, -1);
+        }
 
-                loadItem._imageResourceLoader.loaded(ir, newImg.getWidth(), newImg.getHeight());
-                final boolean wasScaled;
-                if (loadItem.haveTargetDimensions() && !ir.hasDimensions(loadItem._targetWidth, loadItem._targetHeight)) {
-                    XRLog.load(Level.FINE, this + ", scaling " + loadItem._uri + " to " + loadItem._targetWidth + ", " + loadItem._targetHeight);
-                    newImg = ImageUtil.getScaledInstance(newImg, loadItem._targetWidth, loadItem._targetHeight);
-                    ImageResource sir = new ImageResource(ir.getImageUri(), AWTFSImage.createImage(newImg));
-                    loadItem._imageResourceLoader.loaded(sir, newImg.getWidth(), newImg.getHeight());
-                    wasScaled = true;
-                } else {
-                    wasScaled = false;
+        List<ImageLoadItem> items = queue.finished(uri);
+        for (final ImageLoadItem loadItem : items) {
+            ImageResource source = ir;
+            if (targetSize != null && (!loadItem.haveTargetDimensions() ||
+                    loadItem._targetWidth > targetSize.width || loadItem._targetHeight > targetSize.height)) {
+                // attached after decoding started, needs a larger image
+                ir = load(uri, null);
+                img = getImage(ir);
+                targetSize = null;
+                imageResourceLoader.loaded(ir, -1, -1);
+                source = ir;
+            }
+
+            BufferedImage newImg = img;
+            final boolean wasScaled;
+            if (loadItem.haveTargetDimensions() && !source.hasDimensions(loadItem._targetWidth, loadItem._targetHeight)) {
+                XRLog.load(Level.FINE, Thread.currentThread().getName() + ", scaling " + uri + " to " + loadItem._targetWidth + ", " + loadItem._targetHeight);
+                newImg = ImageUtil.getScaledInstance(img, loadItem._targetWidth, loadItem._targetHeight);
+                ImageResource sir = new ImageResource(ir.getImageUri(), AWTFSImage.createImage(newImg));
+                loadItem._imageResourceLoader.loaded(sir, newImg.getWidth(), newImg.getHeight());
+                wasScaled = true;
+            } else {
+                wasScaled = false;
+            }
+
+            // msfImage belongs to the Swing AWT thread
+            final BufferedImage newImg1 = newImg;
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    loadItem._mfsImage.setImage(loadItem._uri, newImg1, wasScaled);
                 }
+            });
+        }
+    }
 
-                // msfImage belongs to the Swing AWT thread
-                final BufferedImage newImg1 = newImg;
-                EventQueue.invokeLater(new Runnable() {
-                    public void run() {
-                        loadItem._mfsImage.setImage(loadItem._uri, newImg1, wasScaled);
-                    }
-                });
+    private static ImageResource load(String uri, Dimension targetSize) {
+        ImageResource ir;
+        try {
+            if (targetSize == null) {
+                ir = ImageResourceLoader.loadImageResourceFromUri(uri);
+            } else {
+                ir = ImageResourceLoader.loadImageResourceFromUri(uri, targetSize.width, targetSize.height);
             }
-        } catch (InterruptedException e) {
-            //
+        } catch (RuntimeException e) {
+            XRLog.exception("Can't read image file; unexpected problem for URI '" + uri + "'", e);
+            ir = ImageResourceLoader.createImageResource(uri, null);
         }
+        XRLog.load(Level.FINE, Thread.currentThread().getName() + ", loaded " + uri);
+        return ir;
+    }
+
+    private static BufferedImage getImage(ImageResource ir) {
+        FSImage awtfsImage = ir.getImage();
+        return (BufferedImage) ((AWTFSImage) awtfsImage).getImage();
     }
 }
@@ -7,10 +7,12 @@ import java.io.InputStream;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
-import javax.imageio.ImageIO;
-
 import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.util.Configuration;
@@ -20,7 +22,14 @@ import org.xhtmlrenderer.util.XRLog;
 
 
 /**
- *
+ * Loads and caches the images of documents. With background loading enabled
+ * (<code>xr.image.background.loading.enable</code>), images not available
+ * locally are loaded on a pool of <code>xr.image.background.workers</code>
+ * threads, or on an executor passed to the constructor, e.g. one running each
+ * load on a virtual thread. Each URI is loaded once however many images
+ * request it, the images closest to what the user sees are loaded first (see
+ * {@link #prioritize(Map)}) and pending loads are dropped when a new document
+ * is started.
  */
 public class ImageResourceLoader {
     public static final RepaintListener NO_OP_REPAINT_LISTENER = new RepaintListener() {
@@ -32,6 +41,8 @@ public class ImageResourceLoader {
 
     private final ImageLoadQueue _loadQueue;
 
+    private final ExecutorService _loadExecutor;
+
     private final int _imageCacheCapacity;
 
     private RepaintListener _repaintListener = NO_OP_REPAINT_LISTENER;
@@ -44,17 +55,27 @@ public class ImageResourceLoader {
     }
 
     public ImageResourceLoader(int cacheSize) {
+        this(cacheSize, null);
+    }
+
+    /**
+     * @param loadExecutor runs the background image loads if background
+     * loading is enabled; if null, a pool of
+     * <code>xr.image.background.workers</code> daemon threads is used. As
+     * the most urgent image is picked when a load starts, prioritization
+     * only has an effect if the executor has fewer threads than there are
+     * images.
+     */
+    public ImageResourceLoader(int cacheSize, ExecutorService loadExecutor) {
         this._imageCacheCapacity = cacheSize;
         this._useBackgroundImageLoading = Configuration.isTrue("xr.image.background.loading.enable", false);
 
         if (_useBackgroundImageLoading) {
             this._loadQueue = new ImageLoadQueue();
-            final int workerCount = Configuration.valueAsInt("xr.image.background.workers", 5);
-            for (int i = 0; i < workerCount; i++) {
-                new ImageLoadWorker(_loadQueue).start();
-            }
+            this._loadExecutor = loadExecutor != null ? loadExecutor : newLoadExecutor();
         } else {
             this._loadQueue = null;
+            this._loadExecutor = null;
         }
 
         this._repaintListener = NO_OP_REPAINT_LISTENER;
@@ -64,7 +85,31 @@ public class ImageResourceLoader {
         this._imageCache = new LinkedHashMap<CacheKey, ImageResource>(cacheSize, 0.75f, true);
     }
 
+    private static ExecutorService newLoadExecutor() {
+        final int workerCount = Configuration.valueAsInt("xr.image.background.workers", 5);
+        return Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ImageLoadWorker(" + counter.getAndIncrement() + ")");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
     public static ImageResource loadImageResourceFromUri(final String uri) {
+        return loadImageResourceFromUri(uri, -1, -1);
+    }
+
+    /**
+     * Loads the image at <code>uri</code> for display at the given size (-1
+     * if unknown). The image is decoded at a reduced resolution if it is a
+     * lot larger than that, see {@link ImageUtil#readImage(InputStream, int, int)},
+     * so it must be scaled before it is shown.
+     */
+    public static ImageResource loadImageResourceFromUri(final String uri, final int width, final int height) {
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
             return loadEmbeddedBase64ImageResource(uri);
         } else {
@@ -75,9 +120,9 @@ public class ImageResourceLoader {
                 sr.connect();
                 is = sr.bufferedStream();
                 try {
-                    BufferedImage img = ImageIO.read(is);
+                    BufferedImage img = ImageUtil.readImage(is, width, height);
                     if (img == null) {
-                        throw new IOException("ImageIO.read() returned null");
+                        throw new IOException("No image reader for the format");
                     }
                     ir = createImageResource(uri, img);
                 } catch (FileNotFoundException e) {
@@ -143,10 +188,13 @@ public class ImageResourceLoader {
                 if (ir == null) {
                     if (isImmediateLoadUri(uri)) {
                         XRLog.load(Level.FINE, "Load immediate: " + uri);
-                        ir = loadImageResourceFromUri(uri);
+                        ir = loadImageResourceFromUri(uri, width, height);
                         FSImage awtfsImage = ir.getImage();
                         BufferedImage newImg = ((AWTFSImage) awtfsImage).getImage();
-                        loaded(ir, -1, -1);
+                        if (width == -1 && height == -1) {
+                            // only full resolution images can serve other sizes
+                            loaded(ir, -1, -1);
+                        }
                         if (width > -1 && height > -1) {
                             XRLog.load(Level.FINE, this + ", scaling " + uri + " to " + width + ", " + height);
                             newImg = ImageUtil.getScaledInstance(newImg, width, height);
@@ -157,7 +205,9 @@ public class ImageResourceLoader {
                         XRLog.load(Level.FINE, "Image cache miss, URI not yet loaded, queueing: " + uri);
                         MutableFSImage mfsi = new MutableFSImage(_repaintListener);
                         ir = new ImageResource(uri, mfsi);
-                        _loadQueue.addToQueue(this, uri, mfsi, width, height);
+                        if (_loadQueue.addToQueue(this, uri, mfsi, width, height)) {
+                            _loadExecutor.execute(new ImageLoadWorker(this, _loadQueue));
+                        }
                     }
 
                     _imageCache.put(key, ir);
@@ -207,6 +257,29 @@ public class ImageResourceLoader {
         if (_loadQueue != null) {
             XRLog.load("By request, clearing pending items from load queue: " + _loadQueue.size());
             _loadQueue.reset();
+            removeUnloaded();
+        }
+    }
+
+    // the placeholders of cancelled loads would never be filled in
+    private synchronized void removeUnloaded() {
+        for (Iterator<ImageResource> it = _imageCache.values().iterator(); it.hasNext(); ) {
+            if (! it.next().isLoaded()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Reorders the pending background loads: images are loaded in increasing
+     * order of the priority given for their URI, e.g. the distance in pixels
+     * of the nearest image using it from the visible area of the document.
+     * Images not mentioned are loaded last, in the order they were requested.
+     * Replaces the priorities set by the previous call.
+     */
+    public void prioritize(Map<String, Integer> priorities) {
+        if (_loadQueue != null) {
+            _loadQueue.setPriorities(priorities);
         }
     }
 
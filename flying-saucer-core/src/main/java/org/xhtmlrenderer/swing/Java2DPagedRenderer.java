@@ -0,0 +1,443 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Deflater;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.ParallelSupport;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.util.ImageUtil;
+import org.xhtmlrenderer.util.StreamingPngWriter;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * Renders a document as one image per page, the way the PDF renderer
+ * renders it as PDF: the document is laid out once in print mode, split into
+ * pages according to its <code>@page</code> rules, and each page (with its
+ * margin boxes and running elements) is painted to an image of its own.
+ * {@link #getPageImages()} paints pages concurrently on the fork/join pool
+ * also used for parallel style resolution. Usage:
+ *
+ * <pre>
+ * Java2DPagedRenderer rend = new Java2DPagedRenderer(new File("report.xhtml"));
+ * for (int i = 0; i &lt; rend.getPageCount(); i++) {
+ *     rend.writePng(i, new FileOutputStream("page-" + (i + 1) + ".png"));
+ * }
+ * </pre>
+ *
+ * <p>Pages are laid out at 72 dots per inch, one dot per pixel; use
+ * {@link #setScale(float)} for larger or smaller images. Not thread-safe.</p>
+ *
+ * @see Java2DRenderer
+ */
+public class Java2DPagedRenderer {
+    private final SharedContext _sharedContext;
+    private final Java2DOutputDevice _outputDevice;
+
+    private Document _doc;
+    private final String _sourceDocument;
+    private final String _sourceDocumentBase;
+
+    private BlockBox _root;
+    private List<PageBox> _pages;
+
+    private float _scale = 1.0f;
+    private int _bufferedImageType = BufferedImage.TYPE_INT_RGB;
+    private Map<RenderingHints.Key, Object> _renderingHints;
+
+    /**
+     * Creates a new instance for the document at <code>url</code>, which is
+     * also used as the base URL.
+     */
+    public Java2DPagedRenderer(String url) {
+        this(url, url);
+    }
+
+    /**
+     * Creates a new instance for the document at <code>url</code>, resolving
+     * relative paths against <code>baseUrl</code>.
+     */
+    public Java2DPagedRenderer(String url, String baseUrl) {
+        this(null, url, baseUrl);
+    }
+
+    /**
+     * Creates a new instance for the given file.
+     */
+    public Java2DPagedRenderer(File file) throws IOException {
+        this(file.toURI().toURL().toExternalForm());
+    }
+
+    /**
+     * Creates a new instance for a document already loaded, resolving
+     * relative paths against <code>baseUrl</code>.
+     */
+    public Java2DPagedRenderer(Document doc, String baseUrl) {
+        this(doc, null, baseUrl);
+    }
+
+    private Java2DPagedRenderer(Document doc, String url, String baseUrl) {
+        _doc = doc;
+        _sourceDocument = url;
+        _sourceDocumentBase = baseUrl;
+
+        _outputDevice = new Java2DOutputDevice(ImageUtil.createCompatibleBufferedImage(1, 1));
+
+        _sharedContext = new SharedContext(new NaiveUserAgent());
+        _sharedContext.setFontResolver(new AWTFontResolver());
+        _sharedContext.setReplacedElementFactory(new Java2DReplacedElementFactory());
+        _sharedContext.setTextRenderer(new Java2DTextRenderer());
+        _sharedContext.setDPI(72);
+        _sharedContext.setDotsPerPixel(1);
+        _sharedContext.setPrint(true);
+        _sharedContext.setInteractive(false);
+    }
+
+    /**
+     * The SharedContext used for layout; settings may be changed before the
+     * first page is requested.
+     */
+    public SharedContext getSharedContext() {
+        return _sharedContext;
+    }
+
+    /**
+     * Sets the factor page images are scaled by, e.g. 2 for pages at 144
+     * dots per inch. The layout is the same at any scale.
+     */
+    public void setScale(float scale) {
+        _scale = scale;
+    }
+
+    public float getScale() {
+        return _scale;
+    }
+
+    /**
+     * Sets the type of the images pages are painted to, see
+     * {@link BufferedImage#BufferedImage(int, int, int)}. Defaults to RGB.
+     */
+    public void setBufferedImageType(int bufferedImageType) {
+        _bufferedImageType = bufferedImageType;
+    }
+
+    /**
+     * Sets rendering hints added to the defaults of each page's Graphics2D.
+     */
+    public void setRenderingHints(Map<RenderingHints.Key, Object> hints) {
+        _renderingHints = hints;
+    }
+
+    /**
+     * Returns the number of pages, laying out the document if necessary.
+     */
+    public int getPageCount() {
+        layout();
+        return _pages.size();
+    }
+
+    /**
+     * Paints page <code>pageNo</code> (starting at 0) to a new image.
+     */
+    public BufferedImage getPageImage(int pageNo) {
+        layout();
+        if (pageNo < 0 || pageNo >= _pages.size()) {
+            throw new IllegalArgumentException("Page " + pageNo + " is not between 0 " +
+                    "and " + _pages.size());
+        }
+
+        BufferedImage image = createPageImage(pageNo);
+        paintPage(image, pageNo);
+        return image;
+    }
+
+    /**
+     * Paints all pages, each to an image of its own, a task per page.
+     * Painting a line whose content is generated at paint time (e.g.
+     * <code>counter(page)</code>) lays it out again for the page being
+     * painted, so pages sharing such a line (one broken across them) are
+     * painted one after the other by the same task. Documents with fixed
+     * positioned content, which is repositioned on every page, are painted
+     * one page after the other on the calling thread. The UserAgentCallback
+     * must be thread-safe.
+     */
+    public List<BufferedImage> getPageImages() {
+        layout();
+
+        long start = System.currentTimeMillis();
+
+        BufferedImage[] images = new BufferedImage[_pages.size()];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = createPageImage(i);
+        }
+
+        boolean[] sharesLine = findPagesSharingDynamicLines();
+        final List<PageTask> tasks = new ArrayList<PageTask>(images.length);
+        for (int first = 0; first < images.length; ) {
+            int last = first;
+            while (sharesLine[last]) {
+                last++;
+            }
+            tasks.add(new PageTask(this, images, first, last));
+            first = last + 1;
+        }
+
+        if (tasks.size() == 1 || _root.getLayer().containsFixedContent()) {
+            for (PageTask task : tasks) {
+                task.compute();
+            }
+        } else {
+            ParallelSupport.getPool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        XRLog.render("TIME: painted " + images.length + " pages in " + tasks.size() + " tasks in " +
+                (System.currentTimeMillis() - start) + "ms");
+
+        return Arrays.asList(images);
+    }
+
+    /**
+     * Whether each page shares a line with content generated at paint time
+     * with the next page. Never true for the last page.
+     */
+    private boolean[] findPagesSharingDynamicLines() {
+        boolean[] result = new boolean[_pages.size()];
+        for (LineBox line : findDynamicLines(_root, new ArrayList<LineBox>())) {
+            Rectangle bounds = line.getPaintingInfo() != null ?
+                    line.getPaintingInfo().getAggregateBounds() :
+                    new Rectangle(line.getAbsX(), line.getAbsY(), line.getWidth(), line.getHeight());
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < _pages.size(); i++) {
+                PageBox page = _pages.get(i);
+                if (page.getBottom() > bounds.y && page.getTop() < bounds.y + bounds.height) {
+                    if (first == -1) {
+                        first = i;
+                    }
+                    last = i;
+                }
+            }
+            for (int i = first; i >= 0 && i < last; i++) {
+                result[i] = true;
+            }
+        }
+        return result;
+    }
+
+    private static List<LineBox> findDynamicLines(Box box, List<LineBox> result) {
+        if (box instanceof LineBox && ((LineBox) box).isContainsDynamicFunction()) {
+            result.add((LineBox) box);
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            findDynamicLines(box.getChild(i), result);
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    findDynamicLines((Box) child, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Paints page <code>pageNo</code> and writes it as PNG to
+     * <code>os</code>, which is not closed.
+     */
+    public void writePng(int pageNo, OutputStream os) throws IOException {
+        BufferedImage image = getPageImage(pageNo);
+        StreamingPngWriter writer = new StreamingPngWriter(os, image.getWidth(), image.getHeight(),
+                image.getColorModel().hasAlpha(), Deflater.DEFAULT_COMPRESSION);
+        writer.write(image);
+        writer.finish();
+    }
+
+    /**
+     * Returns a cleared image of the given size for a page. Override to
+     * control the images pages are painted to.
+     */
+    protected BufferedImage createBufferedImage(int width, int height) {
+        BufferedImage image = ImageUtil.createCompatibleBufferedImage(width, height, _bufferedImageType);
+        ImageUtil.clearImage(image);
+        return image;
+    }
+
+    private BufferedImage createPageImage(int pageNo) {
+        PageBox page = _pages.get(pageNo);
+        RenderingContext c = newRenderingContext(_outputDevice.getGraphics());
+        return createBufferedImage(
+                (int) Math.ceil(page.getWidth(c) * _scale),
+                (int) Math.ceil(page.getHeight(c) * _scale));
+    }
+
+    /**
+     * Paints page <code>pageNo</code> into <code>image</code>. Only reads the
+     * layout, apart from lines with content generated at paint time, so pages
+     * that share no such line may be painted concurrently.
+     */
+    private void paintPage(BufferedImage image, int pageNo) {
+        Graphics2D g = image.createGraphics();
+        try {
+            if (_renderingHints != null) {
+                g.addRenderingHints(_renderingHints);
+            }
+            if (_scale != 1.0f) {
+                g.scale(_scale, _scale);
+            }
+
+            RenderingContext c = newRenderingContext(g);
+            PageBox page = _pages.get(pageNo);
+            c.setPageCount(_pages.size());
+            c.setPage(pageNo, page);
+
+            page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
+            page.paintMarginAreas(c, 0, Layer.PAGED_MODE_PRINT);
+            page.paintBorder(c, 0, Layer.PAGED_MODE_PRINT);
+
+            Rectangle content = page.getPrintClippingBounds(c);
+            g.clip(content);
+
+            int top = -page.getPaintingTop() +
+                page.getMarginBorderPadding(c, CalculatedStyle.TOP);
+
+            int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
+
+            g.translate(left, top);
+            _root.getLayer().paint(c);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static final class PageTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Java2DPagedRenderer _renderer;
+        private final BufferedImage[] _images;
+        private final int _first;
+        private final int _last;
+
+        /**
+         * A task painting pages <code>first</code> to <code>last</code>
+         * (inclusive) in order.
+         */
+        PageTask(Java2DPagedRenderer renderer, BufferedImage[] images, int first, int last) {
+            _renderer = renderer;
+            _images = images;
+            _first = first;
+            _last = last;
+        }
+
+        protected void compute() {
+            for (int i = _first; i <= _last; i++) {
+                _renderer.paintPage(_images[i], i);
+            }
+        }
+    }
+
+    private void layout() {
+        if (_root != null) {
+            return;
+        }
+
+        if (_doc == null) {
+            _doc = _sharedContext.getUac().getXMLResource(_sourceDocument).getDocument();
+        }
+        setDocument();
+
+        long start = System.currentTimeMillis();
+
+        LayoutContext c = _sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(_outputDevice.getGraphics()));
+        _sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        PageBox first = Layer.createPageBox(c, "first");
+        Rectangle extents = new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c));
+        _sharedContext.set_TempCanvas(extents);
+
+        BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        root.setContainingBlock(new ViewportBox(extents));
+        root.layout(c);
+        root.getLayer().trimEmptyPages(c, root.getLayer().getPaintingDimension(c).height);
+        root.getLayer().layoutPages(c);
+        _root = root;
+
+        RenderingContext rc = newRenderingContext(_outputDevice.getGraphics());
+        root.getLayer().assignPagePaintingPositions(rc, Layer.PAGED_MODE_PRINT);
+        _pages = root.getLayer().getPages();
+
+        XRLog.layout("TIME: laid out " + _pages.size() + " pages in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void setDocument() {
+        _sharedContext.reset();
+        if (_sharedContext.getRendererSettings().isCacheStylesheets()) {
+            _sharedContext.getCss().flushStyleSheets();
+        } else {
+            _sharedContext.getCss().flushAllStyleSheets();
+        }
+        _sharedContext.setBaseURL(_sourceDocumentBase);
+        _sharedContext.setNamespaceHandler(new HtmlNamespaceHandler());
+        _sharedContext.getCss().setDocumentContext(
+                _sharedContext, _sharedContext.getNamespaceHandler(), _doc, new NullUserInterface());
+    }
+
+    private RenderingContext newRenderingContext(Graphics2D g) {
+        RenderingContext result = _sharedContext.newRenderingContextInstance();
+        result.setFontContext(new Java2DFontContext(g));
+        result.setOutputDevice(new Java2DOutputDevice(g));
+        _sharedContext.getTextRenderer().setup(result.getFontContext());
+        if (_root != null) {
+            result.setRootLayer(_root.getLayer());
+        }
+        return result;
+    }
+
+    private static final class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
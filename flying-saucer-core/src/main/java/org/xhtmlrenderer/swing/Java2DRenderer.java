@@ -23,16 +23,21 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Deflater;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.xhtmlrenderer.extend.NamespaceHandler;
-import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.ParallelSupport;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
@@ -41,6 +46,8 @@ import org.xhtmlrenderer.render.ViewportBox;
 import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
+import org.xhtmlrenderer.util.StreamingPngWriter;
+import org.xhtmlrenderer.util.XRLog;
 
 /**
  * <p>Renders an XML files, formatted with CSS, as an image. Input is a document in the form of file or URL,
@@ -66,6 +73,10 @@ import org.xhtmlrenderer.util.ImageUtil;
  * {@link #getImage()}, or else override the {@link #createBufferedImage(int, int)} to have full control over
  * the image we render to.</p>
  *
+ * <p>Tall images can be painted in horizontal bands on several threads, see {@link #setBandHeight(int)}, and
+ * written as PNG while they are painted, without ever being held in memory completely, see
+ * {@link #writePng(OutputStream)}.</p>
+ *
  * <p>Not thread-safe.</p>
  *
  * @see ITextRenderer
@@ -75,6 +86,7 @@ public class Java2DRenderer {
 	private static final int DEFAULT_DOTS_PER_POINT = 1;
 	private static final int DEFAULT_DOTS_PER_PIXEL = 1;
 	private static final int DEFAULT_IMAGE_TYPE = BufferedImage.TYPE_INT_RGB;
+	private static final int DEFAULT_STREAMING_BAND_HEIGHT = 256;
 
 	private SharedContext sharedContext;
 	private Java2DOutputDevice outputDevice;
@@ -97,6 +109,7 @@ public class Java2DRenderer {
 	private int height;
 	private static final int NO_HEIGHT = -1;
 	private Map<RenderingHints.Key, Object> renderingHints;
+	private int bandHeight = Configuration.valueAsInt("xr.renderer.band-height", 0);
 
 
 	/**
@@ -257,6 +270,24 @@ public class Java2DRenderer {
 		this.bufferedImageType = bufferedImageType;
 	}
 
+	/**
+	 * Sets the height in pixels of the horizontal bands the image is painted in. Each band is painted by a
+	 * task of its own on the fork/join pool also used for parallel style resolution, clipped to the band, so
+	 * a tall image is painted on as many threads as there are processors. 0, the default (or the
+	 * <code>xr.renderer.band-height</code> configuration property), paints the image in one piece on the calling
+	 * thread, as do documents with fixed positioned content. When painting in bands, the UserAgentCallback must
+	 * be thread-safe.
+	 *
+	 * @param bandHeight band height in pixels, or 0
+	 */
+	public void setBandHeight(int bandHeight) {
+		this.bandHeight = bandHeight;
+	}
+
+	public int getBandHeight() {
+		return bandHeight;
+	}
+
 	/**
 	 * Returns the SharedContext to be used by renderer. Is instantiated along with the class, so can be accessed
 	 * before {@link #getImage()} is called to tune the rendering process.
@@ -277,30 +308,142 @@ public class Java2DRenderer {
 	 */
 	public BufferedImage getImage() {
 		if (!rendered) {
-            setDocument((doc == null ? loadDocument(sourceDocument) : doc), sourceDocumentBase, new HtmlNamespaceHandler());
+			prepare();
+			outputImage = createBufferedImage(this.width, height);
+
+			if (bandHeight > 0 && height > bandHeight && ! root.getLayer().containsFixedContent()) {
+				paintBands(outputImage);
+			} else {
+				paintBand(outputImage, 0);
+			}
+			rendered = true;
+		}
+
+		return outputImage;
+	}
+
+	/**
+	 * Renders the XML document as a PNG image to <code>os</code>, painting it in bands (of the height set
+	 * with {@link #setBandHeight(int)}, or 256 pixels) which are written out as soon as they are painted.
+	 * At most one band per processor is held in memory at a time, instead of the whole image; the image
+	 * is not kept for {@link #getImage()}. Band images are created by {@link #createBufferedImage(int, int)};
+	 * the PNG has an alpha channel if they do.
+	 *
+	 * @param os the stream to write to; not closed
+	 * @throws IOException if writing to os fails
+	 */
+	public void writePng(OutputStream os) throws IOException {
+		prepare();
+
+		int band = bandHeight > 0 ? bandHeight : DEFAULT_STREAMING_BAND_HEIGHT;
+		int parallelism = bandHeight > 0 && ! root.getLayer().containsFixedContent() ?
+				ParallelSupport.getPool().getParallelism() : 1;
+
+		long start = System.currentTimeMillis();
+		StreamingPngWriter writer = null;
+		for (int y = 0; y < height; ) {
+			// paint as many bands as there are threads, then write them
+			final List<BandTask> tasks = new ArrayList<BandTask>(parallelism);
+			for (int i = 0; i < parallelism && y < height; i++, y += band) {
+				tasks.add(new BandTask(this, createBufferedImage(width, Math.min(band, height - y)), y));
+			}
+			if (tasks.size() == 1) {
+				tasks.get(0).compute();
+			} else {
+				ParallelSupport.getPool().invoke(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+			}
+
+			for (BandTask task : tasks) {
+				if (writer == null) {
+					writer = new StreamingPngWriter(os, width, height,
+							task.band.getColorModel().hasAlpha(), Deflater.DEFAULT_COMPRESSION);
+				}
+				writer.write(task.band);
+			}
+		}
+		if (writer != null) {
+			writer.finish();
+		}
+
+		XRLog.render("TIME: streamed " + width + "x" + height + " PNG in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void prepare() {
+		if (root == null) {
+			setDocument((doc == null ? loadDocument(sourceDocument) : doc), sourceDocumentBase, new HtmlNamespaceHandler());
 
 			layout(this.width);
 
 			height = this.height == -1 ? root.getHeight() : this.height;
-			outputImage = createBufferedImage(this.width, height);
-			outputDevice = new Java2DOutputDevice(outputImage);
-			Graphics2D newG = (Graphics2D) outputImage.getGraphics();
-			if ( renderingHints != null ) {
-				newG.addRenderingHints(renderingHints);
+		}
+	}
+
+	private void paintBands(BufferedImage image) {
+		long start = System.currentTimeMillis();
+
+		final List<BandTask> tasks = new ArrayList<BandTask>();
+		for (int y = 0; y < image.getHeight(); y += bandHeight) {
+			int h = Math.min(bandHeight, image.getHeight() - y);
+			// Shares the pixels of image
+			tasks.add(new BandTask(this, image.getSubimage(0, y, image.getWidth(), h), y));
+		}
+		ParallelSupport.getPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		XRLog.render("TIME: painted " + tasks.size() + " bands in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Paints the part of the document starting at <code>y</code> into <code>band</code>. Only reads the
+	 * layout, so bands may be painted concurrently.
+	 */
+	private void paintBand(BufferedImage band, int y) {
+		Graphics2D g = band.createGraphics();
+		try {
+			if (renderingHints != null) {
+				g.addRenderingHints(renderingHints);
 			}
+			g.translate(0, -y);
+			g.clipRect(0, y, band.getWidth(), band.getHeight());
 
 			RenderingContext rc = sharedContext.newRenderingContextInstance();
-			rc.setFontContext(new Java2DFontContext(newG));
-			rc.setOutputDevice(outputDevice);
+			rc.setFontContext(new Java2DFontContext(g));
+			rc.setOutputDevice(new Java2DOutputDevice(g));
 			sharedContext.getTextRenderer().setup(rc.getFontContext());
 
 			root.getLayer().paint(rc);
+		} finally {
+			g.dispose();
+		}
+	}
 
-			newG.dispose();
-			rendered = true;
+	private static final class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Java2DRenderer renderer;
+		private final BufferedImage band;
+		private final int y;
+
+		BandTask(Java2DRenderer renderer, BufferedImage band, int y) {
+			this.renderer = renderer;
+			this.band = band;
+			this.y = y;
 		}
 
-		return outputImage;
+		protected void compute() {
+			renderer.paintBand(band, y);
+		}
 	}
 
 	/**
@@ -322,7 +465,7 @@ public class Java2DRenderer {
 		this.doc = doc;
 
 		sharedContext.reset();
-		if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+		if (sharedContext.getRendererSettings().isCacheStylesheets()) {
 			sharedContext.getCss().flushStyleSheets();
 		} else {
 			sharedContext.getCss().flushAllStyleSheets();
@@ -372,9 +515,7 @@ public class Java2DRenderer {
 		AWTFontResolver fontResolver = new AWTFontResolver();
 		sharedContext.setFontResolver(fontResolver);
 
-		// TODO
-		//ReplacedElementFactory replacedElementFactory = new SwingReplacedElementFactory();
-		sharedContext.setReplacedElementFactory(null);
+		sharedContext.setReplacedElementFactory(new Java2DReplacedElementFactory());
 
 		sharedContext.setTextRenderer(new Java2DTextRenderer());
 		sharedContext.setDPI(72 * this.dotsPerPoint);
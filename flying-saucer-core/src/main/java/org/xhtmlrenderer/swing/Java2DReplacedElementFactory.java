@@ -0,0 +1,100 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.jsoup.nodes.Element;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
+import org.xhtmlrenderer.util.ImageUtil;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * Replaces the images of a document rendered to an image by
+ * {@link Java2DRenderer} or {@link BoxRenderer}. Images are loaded right
+ * away, decoded at a resolution close to the size they are shown at and
+ * reused by all images of the same source and size.
+ */
+public class Java2DReplacedElementFactory implements ReplacedElementFactory {
+    private final Map<CacheKey, Image> _images = new HashMap<CacheKey, Image>();
+
+    public ReplacedElement createReplacedElement(
+            LayoutContext c, BlockBox box, UserAgentCallback uac, int cssWidth, int cssHeight) {
+        Element e = box.getElement();
+        if (e == null || !c.getNamespaceHandler().isImageElement(e)) {
+            return null;
+        }
+
+        String src = c.getNamespaceHandler().getImageSourceURI(e);
+        if (src == null || src.length() == 0) {
+            XRLog.layout(Level.WARNING, "No source provided for img element.");
+            return null;
+        }
+
+        String uri = ImageUtil.isEmbeddedBase64Image(src) ? src : uac.resolveURI(src);
+        CacheKey key = new CacheKey(uri, cssWidth, cssHeight);
+        Image image = _images.get(key);
+        if (image == null) {
+            BufferedImage loaded;
+            if (ImageUtil.isEmbeddedBase64Image(uri)) {
+                loaded = ImageUtil.loadEmbeddedBase64Image(uri);
+            } else {
+                loaded = ((AWTFSImage) ImageResourceLoader.loadImageResourceFromUri(
+                        uri, cssWidth, cssHeight).getImage()).getImage();
+            }
+            if (loaded == null) {
+                return null;
+            }
+            image = new ImageReplacedElement(loaded, cssWidth, cssHeight).getImage();
+            _images.put(key, image);
+        }
+
+        // Already at the target size
+        return new ImageReplacedElement(image, cssWidth, cssHeight);
+    }
+
+    public void reset() {
+        _images.clear();
+    }
+
+    public void remove(Element e) {
+    }
+
+    public void setFormSubmissionListener(FormSubmissionListener listener) {
+    }
+
+    private static class CacheKey {
+        final String uri;
+        final int width;
+        final int height;
+
+        public CacheKey(final String uri, final int width, final int height) {
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+
+            final CacheKey cacheKey = (CacheKey) o;
+
+            return width == cacheKey.width && height == cacheKey.height && uri.equals(cacheKey.uri);
+        }
+
+        public int hashCode() {
+            int result = uri.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
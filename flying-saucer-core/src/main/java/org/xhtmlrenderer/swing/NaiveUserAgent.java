@@ -95,7 +95,7 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
      * If the image cache has more items than the limit specified for this class, the least-recently used will
      * be dropped from cache until it reaches the desired size.
      */
-    public void shrinkImageCache() {
+    public synchronized void shrinkImageCache() {
         int ovr = _imageCache.size() - _imageCacheCapacity;
         Iterator<String> it = _imageCache.keySet().iterator();
         while (it.hasNext() && ovr-- > 0) {
@@ -107,7 +107,7 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     /**
      * Empties the image cache entirely.
      */
-    public void clearImageCache() {
+    public synchronized void clearImageCache() {
         _imageCache.clear();
     }
 
@@ -153,7 +153,7 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
      * @param uri Location of the image source.
      * @return An ImageResource containing the image.
      */
-    public ImageResource getImageResource(String uri) {
+    public synchronized ImageResource getImageResource(String uri) {
         ImageResource ir;
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
             BufferedImage image = ImageUtil.loadEmbeddedBase64Image(uri);
@@ -6,6 +6,10 @@ import org.xhtmlrenderer.css.sheet.Stylesheet;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.util.XRLog;
 
+/**
+ * Stylesheets by URI. Safe for use by several threads, since stylesheets may
+ * be parsed in parallel.
+ */
 public class StylesheetCache {
 	/**
 	 * an LRU cache
@@ -31,7 +35,7 @@ public class StylesheetCache {
 	 * @param sheet
 	 *            The sheet to cache.
 	 */
-	public void putStylesheet(String key, Stylesheet sheet) {
+	public synchronized void putStylesheet(String key, Stylesheet sheet) {
 		XRLog.load("Receiving stylesheet for " + key);
 		
 		_cache.put(key, sheet);
@@ -42,7 +46,7 @@ public class StylesheetCache {
 	 * @return true if a Stylesheet with this key has been put in the cache.
 	 *         Note that the Stylesheet may be null.
 	 */
-	public boolean containsStylesheet(String key) {
+	public synchronized boolean containsStylesheet(String key) {
 		return _cache.containsKey(key);
 	}
 
@@ -53,7 +57,7 @@ public class StylesheetCache {
 	 *            The key for this sheet; same as key passed to putStylesheet();
 	 * @return The stylesheet
 	 */
-	public Stylesheet getStylesheet(StylesheetInfo key) {
+	public synchronized Stylesheet getStylesheet(StylesheetInfo key) {
 		if (_cache.containsKey(key.getUri()))
 			XRLog.load("Stylesheet hit for " + key.getUri());
 		else
@@ -68,11 +72,11 @@ public class StylesheetCache {
 	 * @param key
 	 *            The key for this sheet; same as key passed to putStylesheet();
 	 */
-	public Stylesheet removeCachedStylesheet(String key) {
+	public synchronized Stylesheet removeCachedStylesheet(String key) {
 		return _cache.remove(key);
 	}
 
-	public void flushCachedStylesheets() {
+	public synchronized void flushCachedStylesheets() {
 		_cache.clear();
 	}
 }
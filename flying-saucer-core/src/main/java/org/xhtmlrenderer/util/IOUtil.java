@@ -3,6 +3,9 @@ package org.xhtmlrenderer.util;
 import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 
 /**
  * @author patrick
@@ -55,6 +58,27 @@ public class IOUtil {
         }
     }
 
+    /**
+     * Reads <code>in</code> to the end and decodes it in one pass, for
+     * consumers that can work on the whole text in memory. Malformed input is
+     * replaced, as an <code>InputStreamReader</code> would. Does not close
+     * the stream.
+     */
+    public static CharBuffer readChars(InputStream in, Charset charset) throws IOException {
+        byte[] buf = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = in.read(buf, length, buf.length - length)) != -1) {
+            length += read;
+            if (length == buf.length) {
+                byte[] newBuf = new byte[buf.length * 2];
+                System.arraycopy(buf, 0, newBuf, 0, length);
+                buf = newBuf;
+            }
+        }
+        return charset.decode(ByteBuffer.wrap(buf, 0, length));
+    }
+
     /**
      * Attempts to open a connection, and a stream, to the URI provided. timeouts will be set for opening the connection
      * and reading from it. will return the stream, or null if unable to open or read or a timeout occurred. Does not
@@ -23,12 +23,16 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Level;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.xml.bind.DatatypeConverter;
 
 import org.imgscalr.Scalr;
@@ -201,13 +205,88 @@ public class ImageUtil {
      * @return The scaled image instance.
      */
     public static BufferedImage getScaledInstance(BufferedImage orgImage, int targetWidth, int targetHeight) {
-        String downscaleQuality = Configuration.valueFor("xr.image.scale", DownscaleQuality.HIGH_QUALITY.toString());
-        DownscaleQuality quality = DownscaleQuality.valueOf(downscaleQuality);
-        ScalingOptions opt = new ScalingOptions(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB, quality);
+        ScalingOptions opt = new ScalingOptions(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB, getDownscaleQuality());
 
         return getScaledInstance(opt, orgImage);
     }
 
+    private static DownscaleQuality getDownscaleQuality() {
+        String downscaleQuality = Configuration.valueFor("xr.image.scale", DownscaleQuality.HIGH_QUALITY.toString());
+        return DownscaleQuality.valueOf(downscaleQuality);
+    }
+
+    /**
+     * Reads an image which is going to be shown at <code>targetWidth</code> x <code>targetHeight</code> pixels.
+     * If the image is a lot larger, only every n-th row and column is decoded (source subsampling), so a large image
+     * shown small never exists in memory at full size. The image read is still larger than the target by a margin
+     * that depends on the downscaling quality (<code>xr.image.scale</code>: 4 for HIGH_QUALITY, 1 for FAST, 2
+     * otherwise), leaving the final scaling to {@link #getScaledInstance(BufferedImage, int, int)}. For example, a
+     * 6000x4000 image shown at 300x200 is read at 1200x800 with HIGH_QUALITY and at 600x400 with STANDARD. Either target dimension may be -1, in which case the
+     * other one decides; if both are, the image is read at full size.
+     *
+     * @param is the image data; not closed by this method
+     * @return the image, or null if no reader supports the format
+     * @throws IOException if the image can't be read
+     */
+    public static BufferedImage readImage(InputStream is, int targetWidth, int targetHeight) throws IOException {
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            return ImageIO.read(is);
+        }
+
+        ImageInputStream iis = ImageIO.createImageInputStream(is);
+        if (iis == null) {
+            return null;
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), targetWidth, targetHeight);
+                if (subsampling > 1) {
+                    XRLog.load(Level.FINE, "Reading every " + subsampling + ". pixel of a " +
+                            reader.getWidth(0) + "x" + reader.getHeight(0) + " image shown at " + targetWidth + "x" + targetHeight);
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    private static int getSubsampling(int width, int height, int targetWidth, int targetHeight) {
+        double ratio;
+        if (targetWidth > 0 && targetHeight > 0) {
+            ratio = Math.min((double) width / targetWidth, (double) height / targetHeight);
+        } else if (targetWidth > 0) {
+            ratio = (double) width / targetWidth;
+        } else {
+            ratio = (double) height / targetHeight;
+        }
+
+        // Leave the better scalers some pixels to filter
+        int margin;
+        switch (getDownscaleQuality()) {
+            case FAST:
+                margin = 1;
+                break;
+            case HIGH_QUALITY:
+                margin = 4;
+                break;
+            default:
+                margin = 2;
+        }
+
+        return Math.max((int) (ratio / margin), 1);
+    }
+
     /**
      * Scales one image to multiple dimensions, using the same ScalingOptions for each. The method follows the same
      * process for scaling as {@link #getScaledInstance(ScalingOptions,java.awt.Image)}.
@@ -0,0 +1,243 @@
+package org.xhtmlrenderer.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image a few rows at a time, so an image can be encoded while
+ * it is painted, without ever holding all of it in memory. The rows are taken
+ * from images of the full width and any height (bands), which must add up to
+ * the height given to the constructor. Writes 8 bit RGB, or RGBA if the image
+ * has an alpha channel.
+ */
+public class StreamingPngWriter {
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final DataOutputStream _out;
+    private final int _width;
+    private final int _height;
+    private final boolean _alpha;
+
+    private final Deflater _deflater;
+    private final DeflaterOutputStream _idat;
+
+    private final int _bpp;
+    private final int[] _pixels;
+    private byte[] _raw;
+    private byte[] _previous;
+    // filtered rows by filter type, each prefixed with the type
+    private final byte[][] _filtered;
+    private int _rowsWritten;
+
+    /**
+     * Writes the PNG header to <code>os</code>.
+     *
+     * @param os the stream to write to; not closed by this writer
+     * @param width width of the image in pixels
+     * @param height height of the image in pixels
+     * @param alpha whether to write the alpha channel
+     * @param compressionLevel a {@link Deflater} compression level
+     */
+    public StreamingPngWriter(OutputStream os, int width, int height, boolean alpha, int compressionLevel) throws IOException {
+        _out = new DataOutputStream(os);
+        _width = width;
+        _height = height;
+        _alpha = alpha;
+
+        _bpp = alpha ? 4 : 3;
+        _pixels = new int[width];
+        _raw = new byte[width * _bpp];
+        _previous = new byte[width * _bpp];
+        _filtered = new byte[5][1 + width * _bpp];
+        for (int i = 0; i < _filtered.length; i++) {
+            _filtered[i][0] = (byte) i;
+        }
+
+        _out.write(SIGNATURE);
+
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream data = new DataOutputStream(ihdr);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8);
+        data.writeByte(alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        data.writeByte(0); // deflate
+        data.writeByte(0); // adaptive filtering
+        data.writeByte(0); // not interlaced
+        writeChunk("IHDR", ihdr.toByteArray(), ihdr.size());
+
+        _deflater = new Deflater(compressionLevel);
+        _idat = new DeflaterOutputStream(new ChunkOutputStream(), _deflater, 8192);
+    }
+
+    /**
+     * Appends the rows of <code>band</code> to the image.
+     */
+    public void write(BufferedImage band) throws IOException {
+        if (band.getWidth() != _width) {
+            throw new IllegalArgumentException("Band is " + band.getWidth() + " pixels wide, image " + _width);
+        }
+        if (_rowsWritten + band.getHeight() > _height) {
+            throw new IllegalArgumentException("More rows than the image height of " + _height);
+        }
+
+        for (int y = 0; y < band.getHeight(); y++) {
+            band.getRGB(0, y, _width, 1, _pixels, 0, _width);
+
+            int i = 0;
+            for (int x = 0; x < _width; x++) {
+                int argb = _pixels[x];
+                _raw[i] = (byte) (argb >> 16);
+                _raw[i + 1] = (byte) (argb >> 8);
+                _raw[i + 2] = (byte) argb;
+                if (_alpha) {
+                    _raw[i + 3] = (byte) (argb >>> 24);
+                }
+                i += _bpp;
+            }
+
+            _idat.write(filter());
+
+            byte[] tmp = _previous;
+            _previous = _raw;
+            _raw = tmp;
+        }
+        _rowsWritten += band.getHeight();
+    }
+
+    /**
+     * Writes the end of the image, once all rows have been written. Flushes,
+     * but doesn't close, the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (_rowsWritten != _height) {
+            throw new IllegalStateException("Only " + _rowsWritten + " of " + _height + " rows written");
+        }
+        _idat.finish();
+        _idat.flush();
+        _deflater.end();
+        writeChunk("IEND", new byte[0], 0);
+        _out.flush();
+    }
+
+    /**
+     * Applies each filter to the current row and returns the one with the
+     * smallest sum of absolute differences, the heuristic recommended by the
+     * PNG specification.
+     */
+    private byte[] filter() {
+        byte[] none = _filtered[FILTER_NONE];
+        byte[] sub = _filtered[FILTER_SUB];
+        byte[] up = _filtered[FILTER_UP];
+        byte[] average = _filtered[FILTER_AVERAGE];
+        byte[] paeth = _filtered[FILTER_PAETH];
+
+        long[] sums = new long[5];
+        for (int i = 0; i < _raw.length; i++) {
+            int x = _raw[i] & 0xff;
+            int a = i >= _bpp ? _raw[i - _bpp] & 0xff : 0;
+            int b = _previous[i] & 0xff;
+            int c = i >= _bpp ? _previous[i - _bpp] & 0xff : 0;
+
+            none[i + 1] = (byte) x;
+            sub[i + 1] = (byte) (x - a);
+            up[i + 1] = (byte) (x - b);
+            average[i + 1] = (byte) (x - ((a + b) >> 1));
+            paeth[i + 1] = (byte) (x - paethPredictor(a, b, c));
+
+            sums[FILTER_NONE] += Math.abs((int) none[i + 1]);
+            sums[FILTER_SUB] += Math.abs((int) sub[i + 1]);
+            sums[FILTER_UP] += Math.abs((int) up[i + 1]);
+            sums[FILTER_AVERAGE] += Math.abs((int) average[i + 1]);
+            sums[FILTER_PAETH] += Math.abs((int) paeth[i + 1]);
+        }
+
+        int best = FILTER_NONE;
+        for (int f = 1; f < sums.length; f++) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+        return _filtered[best];
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        } else {
+            return c;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        _out.writeInt(length);
+        _out.write(typeBytes);
+        _out.write(data, 0, length);
+        _out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Packs the compressed image data into IDAT chunks.
+     */
+    private final class ChunkOutputStream extends OutputStream {
+        private final byte[] _buffer = new byte[32768];
+        private int _count;
+
+        public void write(int b) throws IOException {
+            if (_count == _buffer.length) {
+                flushChunk();
+            }
+            _buffer[_count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_count == _buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, _buffer.length - _count);
+                System.arraycopy(b, off, _buffer, _count, n);
+                _count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void flush() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (_count > 0) {
+                writeChunk("IDAT", _buffer, _count);
+                _count = 0;
+            }
+        }
+    }
+}
@@ -61,15 +61,14 @@ public class AddNodeToDocument {
                         documentRoot.appendText("adding node at " + new Date());
                         documentRoot.appendChild(domDocument.createElement("br"));
 
-                        // note that we just pass in the same DOM instance we already
-                        // rendered; no need to pass through the XML parser again
-                        panel.setDocument(domDocument);
-
-                        // alternately, this will work as well--doDocumentLayout() followed by repaint()
-                        // setDocument() is still the recommended approach in this case, as it's a top-level entry
-                        // point which ensures that proper setup takes place for the layout and render 
-                        // panel.doDocumentLayout(panel.getGraphics());
-                        // panel.repaint();
+                        // tell the panel which element changed; only the styles and boxes
+                        // affected by the change are computed again before the relayout
+                        panel.elementChildrenChanged(documentRoot);
+
+                        // alternately, pass in the same DOM instance we already rendered
+                        // (no need to pass through the XML parser again); this styles and
+                        // lays out the whole document from scratch
+                        // panel.setDocument(domDocument);
                     }
                 };
 
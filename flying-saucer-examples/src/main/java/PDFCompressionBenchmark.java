@@ -0,0 +1,102 @@
+/*
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import com.itextpdf.text.pdf.PdfStream;
+
+/**
+ * Compares the size and write time of PDFs written with the compression
+ * options of {@link ITextRenderer}: the deflate level, with and without
+ * full compression (object and cross-reference streams). Command line use:
+ * the documents to render (e.g. a corpus of long reports); without arguments
+ * a generated report with a link and a bookmark target per row is used. The
+ * number of timed runs can be set with -Druns=n.
+ */
+public class PDFCompressionBenchmark {
+    private static final int[] LEVELS = new int[] {
+            PdfStream.NO_COMPRESSION, PdfStream.BEST_SPEED, PdfStream.DEFAULT_COMPRESSION, PdfStream.BEST_COMPRESSION };
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.getInteger("runs", 5).intValue();
+
+        ITextRenderer[] renderers;
+        if (args.length == 0) {
+            ITextRenderer renderer = new ITextRenderer();
+            renderer.setDocumentFromString(createDocument(3000));
+            renderers = new ITextRenderer[] { renderer };
+        } else {
+            renderers = new ITextRenderer[args.length];
+            for (int i = 0; i < args.length; i++) {
+                renderers[i] = new ITextRenderer();
+                renderers[i].setDocument(new File(args[i]));
+            }
+        }
+        for (ITextRenderer renderer : renderers) {
+            renderer.layout();
+        }
+
+        System.out.println("Documents: " + renderers.length + ", runs: " + runs);
+        System.out.println("level  full   bytes       ms");
+        for (boolean full : new boolean[] { false, true }) {
+            for (int level : LEVELS) {
+                long size = 0;
+                long time = 0;
+                for (ITextRenderer renderer : renderers) {
+                    renderer.setFullCompression(full);
+                    renderer.setCompressionLevel(level);
+
+                    // warm up
+                    size += write(renderer);
+
+                    long start = System.currentTimeMillis();
+                    for (int i = 0; i < runs; i++) {
+                        write(renderer);
+                    }
+                    time += System.currentTimeMillis() - start;
+                }
+                System.out.println(String.format("%5d  %-5s  %9d  %7d", level, full, size, time / runs));
+            }
+        }
+    }
+
+    private static long write(ITextRenderer renderer) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        renderer.createPDF(os);
+        return os.size();
+    }
+
+    private static String createDocument(int rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><head><style>");
+        sb.append("@page { size: A4; margin: 2cm; @bottom-center { content: 'Page ' counter(page) ' of ' counter(pages); } } ");
+        sb.append("table { border-collapse: collapse; width: 100%; } ");
+        sb.append("td { border: 1px solid #ccc; padding: 2px; } ");
+        sb.append("td.num { text-align: right; } ");
+        sb.append("</style></head><body><h1 id='top'>Report</h1><table>");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<tr><td id='r").append(i).append("'>Row ").append(i).append("</td>");
+            sb.append("<td class='num'>").append(i * 17).append("</td>");
+            sb.append("<td><a href='#r").append((i * 7) % rows).append("'>see row ").append((i * 7) % rows).append("</a></td>");
+            sb.append("<td><a href='http://example.com/item/").append(i).append("'>details</a></td></tr>");
+        }
+        sb.append("</table></body></html>");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.ParallelStyleResolver;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+/**
+ * Compares computing the styles of a large generated document on the calling
+ * thread (as BoxBuilder does during layout) with {@link ParallelStyleResolver}.
+ * Command line use: optional first argument is the number of table rows to
+ * generate, optional second argument the number of timed runs.
+ */
+public class ParallelStyleBenchmark {
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Document doc = Jsoup.parse(createDocument(rows));
+        SharedContext c = new SharedContext(new NaiveUserAgent());
+        c.setNamespaceHandler(new HtmlNamespaceHandler());
+
+        // warm up
+        run(c, doc, false);
+        run(c, doc, true);
+
+        long sequential = 0;
+        long parallel = 0;
+        for (int i = 0; i < runs; i++) {
+            sequential += run(c, doc, false);
+            parallel += run(c, doc, true);
+        }
+
+        System.out.println("Processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("Sequential: " + (sequential / runs) + "ms");
+        System.out.println("Parallel:   " + (parallel / runs) + "ms");
+        System.out.println("Speedup:    " + ((float) sequential / Math.max(parallel, 1)));
+    }
+
+    private static long run(SharedContext c, Document doc, boolean parallel) {
+        c.reset();
+        c.getCss().setDocumentContext(c, c.getNamespaceHandler(), doc, new NullUserInterface());
+
+        long start = System.currentTimeMillis();
+        if (parallel) {
+            ParallelStyleResolver.resolve(c, doc);
+        } else {
+            styleAll(c, doc);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void styleAll(SharedContext c, Element e) {
+        c.getStyle(e);
+        for (Node child : e.childNodes()) {
+            if (child instanceof Element) {
+                styleAll(c, (Element) child);
+            }
+        }
+    }
+
+    private static String createDocument(int rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><head><style>");
+        sb.append("table { border-collapse: collapse; } ");
+        sb.append("tr:nth-child(odd) td { background-color: #eee; } ");
+        sb.append("td.num { text-align: right; font-family: monospace; } ");
+        sb.append("td span.label { font-weight: bold; color: #336; } ");
+        sb.append("tbody tr td + td { border-left: 1px solid #ccc; } ");
+        sb.append("</style></head><body><table><tbody>");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<tr><td><span class='label'>Row ").append(i).append("</span></td>");
+            sb.append("<td class='num'>").append(i * 17).append("</td>");
+            sb.append("<td><em>item</em> <a href='#r").append(i).append("'>link</a></td></tr>");
+        }
+        sb.append("</tbody></table></body></html>");
+        return sb.toString();
+    }
+
+    private static final class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.itextpdf.text.pdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.xhtmlrenderer.pdf.FontSubsetCache;
+
+import com.itextpdf.text.DocumentException;
+
+/**
+ * Writes Unicode TrueType fonts like iText's {@link TtfUnicodeWriter}, but
+ * takes the font program of subset fonts from {@link FontSubsetCache} when
+ * it has a subset with all the glyphs used, and adds the subsets it builds
+ * to it. Everything else (font descriptor, widths, ToUnicode map) is written
+ * for each PDF. It lives in iText's package because the fonts it writes and
+ * the methods writing their dictionaries are package-private; it follows the
+ * <code>writeFont()</code> of iText 5.5.6.
+ */
+public class CachingTtfUnicodeWriter extends TtfUnicodeWriter {
+    public CachingTtfUnicodeWriter(PdfWriter writer) {
+        super(writer);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeFont(TrueTypeFontUnicode font, PdfIndirectReference ref, Object[] params, byte[] rotbits)
+            throws DocumentException, IOException {
+        if (font.cff || ! font.subset) {
+            super.writeFont(font, ref, params, rotbits);
+            return;
+        }
+
+        HashMap<Integer, int[]> longTag = (HashMap<Integer, int[]>) params[0];
+        font.addRangeUni(longTag, true, font.subset);
+        int[][] metrics = longTag.values().toArray(new int[0][]);
+        Arrays.sort(metrics, font);
+
+        HashSet<Integer> glyphs = new HashSet<Integer>(longTag.keySet());
+        PdfStream fontProgram = FontSubsetCache.get(font, glyphs);
+        if (fontProgram == null) {
+            byte[] b = font.getSubSet(glyphs, true);
+            BaseFont.StreamFont stream = new BaseFont.StreamFont(b, new int[] { b.length }, font.compressionLevel);
+            FontSubsetCache.put(font, glyphs, snapshot(stream));
+            fontProgram = stream;
+        }
+        PdfIndirectReference indFont = writer.addToBody(fontProgram).getIndirectReference();
+
+        String subsetPrefix = BaseFont.createSubsetPrefix();
+        PdfDictionary descriptor = font.getFontDescriptor(indFont, subsetPrefix, null);
+        indFont = writer.addToBody(descriptor).getIndirectReference();
+
+        PdfDictionary cidFont = font.getCIDFontType2(indFont, subsetPrefix, metrics);
+        indFont = writer.addToBody(cidFont).getIndirectReference();
+
+        PdfStream toUnicode = font.getToUnicode(metrics);
+        PdfIndirectReference toUnicodeRef = null;
+        if (toUnicode != null) {
+            toUnicodeRef = writer.addToBody(toUnicode).getIndirectReference();
+        }
+
+        writer.addToBody(font.getFontBaseType(indFont, subsetPrefix, toUnicodeRef), ref);
+    }
+
+    /**
+     * A stream with the (compressed) content and the dictionary of
+     * <code>stream</code>, holding its content as bytes.
+     */
+    private static PdfStream snapshot(PdfStream stream) {
+        byte[] content = stream.streamBytes != null ? stream.streamBytes.toByteArray() : stream.bytes;
+        PdfStream result = new PdfStream(content);
+        result.putAll(stream);
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package org.xhtmlrenderer.pdf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * Keeps the fonts of <code>@font-face</code> rules loaded and parsed across
+ * documents and renderers, so a batch of documents using the same web fonts
+ * downloads and parses each of them once instead of once per document. Fonts
+ * are identified by the URIs of their font and metrics files, their encoding
+ * and whether they are embedded; like cached stylesheets, a cached font isn't
+ * reloaded when the resource behind its URI changes. Each document still
+ * writes its own subset of a font, unless {@link FontSubsetCache} is enabled
+ * too. The least recently used fonts are dropped once there are more than
+ * <code>xr.pdf.font-face-cache.size</code>.
+ * <p>
+ * Disabled by default, see {@link #setEnabled(boolean)} or the
+ * <code>xr.pdf.font-face-cache</code> configuration property. Thread-safe.
+ */
+public final class FontFaceCache {
+    private static final int MAX_ENTRIES = Configuration.valueAsInt("xr.pdf.font-face-cache.size", 16);
+
+    private static boolean _enabled = Configuration.isTrue("xr.pdf.font-face-cache", false);
+
+    private static final Map<String, FontDescription> _fonts =
+            new LinkedHashMap<String, FontDescription>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, FontDescription> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static long _hitCount;
+    private static long _missCount;
+
+    private FontFaceCache() {
+    }
+
+    public static synchronized boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Enables or disables the cache. Disabling it drops all cached fonts.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        _enabled = enabled;
+        if (! enabled) {
+            _fonts.clear();
+        }
+    }
+
+    /**
+     * Returns the font loaded for the given rule, or <code>null</code> if it
+     * isn't cached (or the cache is disabled). The result is shared and must
+     * not be modified.
+     */
+    static synchronized FontDescription get(String src, String metricsSrc, String encoding, boolean embedded) {
+        if (! _enabled) {
+            return null;
+        }
+        FontDescription result = _fonts.get(createKey(src, metricsSrc, encoding, embedded));
+        if (result == null) {
+            _missCount++;
+        } else {
+            _hitCount++;
+        }
+        return result;
+    }
+
+    static synchronized void put(String src, String metricsSrc, String encoding, boolean embedded, FontDescription font) {
+        if (_enabled) {
+            _fonts.put(createKey(src, metricsSrc, encoding, embedded), font);
+        }
+    }
+
+    private static String createKey(String src, String metricsSrc, String encoding, boolean embedded) {
+        return src + '\n' + metricsSrc + '\n' + encoding + '\n' + embedded;
+    }
+
+    /**
+     * Drops all cached fonts and resets the statistics.
+     */
+    public static synchronized void clear() {
+        _fonts.clear();
+        _hitCount = 0;
+        _missCount = 0;
+    }
+
+    /**
+     * The number of fonts found in the cache.
+     */
+    public static synchronized long getHitCount() {
+        return _hitCount;
+    }
+
+    /**
+     * The number of fonts that had to be loaded while the cache was enabled.
+     */
+    public static synchronized long getMissCount() {
+        return _missCount;
+    }
+
+    /**
+     * The fraction of fonts found in the cache, 0 if none were looked up.
+     */
+    public static synchronized float getHitRate() {
+        long total = _hitCount + _missCount;
+        return total == 0 ? 0 : (float) _hitCount / total;
+    }
+}
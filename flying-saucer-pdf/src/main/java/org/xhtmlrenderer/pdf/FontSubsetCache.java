@@ -0,0 +1,231 @@
+package org.xhtmlrenderer.pdf;
+
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.xhtmlrenderer.util.Configuration;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.CachingTtfUnicodeWriter;
+import com.itextpdf.text.pdf.PdfDocument;
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.TtfUnicodeWriter;
+
+/**
+ * Keeps the subsets of embedded TrueType fonts written to PDFs, so a batch
+ * of similar documents (e.g. invoices) doesn't build and compress the same
+ * font subset once per document when the PDF is closed. A subset is
+ * identified by its font, the font's compression level and the glyphs it
+ * contains; it is reused by any later document whose glyphs of that font are
+ * all in it, so a document may embed a few glyphs it doesn't use. Fonts are
+ * compared by identity: this only helps with fonts shared by the renderers,
+ * such as those registered by file name (which iText caches) or those of
+ * <code>@font-face</code> rules with {@link FontFaceCache} enabled. The least
+ * recently used subsets are dropped once there are more than
+ * <code>xr.pdf.font-subset-cache.size</code>.
+ * <p>
+ * Only Unicode (Identity-H) TrueType fonts are subset this way; fonts with
+ * other encodings and OpenType fonts with CFF outlines are written by iText
+ * as before. Disabled by default, see {@link #setEnabled(boolean)} or the
+ * <code>xr.pdf.font-subset-cache</code> configuration property. The setting
+ * applies to PDFs created after it is changed. Thread-safe.
+ */
+public final class FontSubsetCache {
+    private static final int MAX_ENTRIES = Configuration.valueAsInt("xr.pdf.font-subset-cache.size", 64);
+
+    private static boolean _enabled = Configuration.isTrue("xr.pdf.font-subset-cache", false);
+
+    private static final Map<SubsetKey, PdfStream> _subsets =
+            new LinkedHashMap<SubsetKey, PdfStream>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<SubsetKey, PdfStream> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static long _hitCount;
+    private static long _missCount;
+
+    private FontSubsetCache() {
+    }
+
+    public static synchronized boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Enables or disables the cache. Disabling it drops all cached subsets.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        _enabled = enabled;
+        if (! enabled) {
+            _subsets.clear();
+        }
+    }
+
+    /**
+     * Returns a writer for a new PDF of <code>doc</code>, which uses the
+     * cache if it is enabled.
+     */
+    static PdfWriter createWriter(Document doc, OutputStream os) throws DocumentException {
+        if (! isEnabled()) {
+            return PdfWriter.getInstance(doc, os);
+        }
+
+        PdfDocument pdf = new PdfDocument();
+        doc.addDocListener(pdf);
+        PdfWriter writer = new SubsetCachingWriter(pdf, os);
+        pdf.addWriter(writer);
+        return writer;
+    }
+
+    /**
+     * Returns a new stream with the font program of a cached subset of
+     * <code>font</code> that contains all of <code>glyphs</code> (the
+     * smallest one if there are several), or <code>null</code> if there is
+     * none. Called by {@link CachingTtfUnicodeWriter}.
+     */
+    public static synchronized PdfStream get(BaseFont font, Set<Integer> glyphs) {
+        if (! _enabled) {
+            return null;
+        }
+
+        BitSet wanted = toBitSet(glyphs);
+        SubsetKey found = null;
+        for (SubsetKey key : _subsets.keySet()) {
+            if (key.isSameFont(font) && key.contains(wanted) &&
+                    (found == null || key._glyphCount < found._glyphCount)) {
+                found = key;
+            }
+        }
+
+        if (found == null) {
+            _missCount++;
+            return null;
+        }
+        _hitCount++;
+        return copy(_subsets.get(found));
+    }
+
+    /**
+     * Keeps a copy of <code>fontProgram</code>, the font program of the
+     * subset of <code>font</code> with <code>glyphs</code>, which must hold
+     * its (compressed) content as bytes. Called by
+     * {@link CachingTtfUnicodeWriter}.
+     */
+    public static synchronized void put(BaseFont font, Set<Integer> glyphs, PdfStream fontProgram) {
+        if (_enabled) {
+            _subsets.put(new SubsetKey(font, toBitSet(glyphs)), copy(fontProgram));
+        }
+    }
+
+    /**
+     * Drops all cached subsets and resets the statistics.
+     */
+    public static synchronized void clear() {
+        _subsets.clear();
+        _hitCount = 0;
+        _missCount = 0;
+    }
+
+    /**
+     * The number of font subsets found in the cache.
+     */
+    public static synchronized long getHitCount() {
+        return _hitCount;
+    }
+
+    /**
+     * The number of font subsets that had to be built while the cache was
+     * enabled.
+     */
+    public static synchronized long getMissCount() {
+        return _missCount;
+    }
+
+    /**
+     * The fraction of font subsets found in the cache, 0 if none were looked
+     * up.
+     */
+    public static synchronized float getHitRate() {
+        long total = _hitCount + _missCount;
+        return total == 0 ? 0 : (float) _hitCount / total;
+    }
+
+    /**
+     * Streams are written by one PDF at a time, and a write may briefly
+     * change the stream's dictionary (when encrypting), so every PDF gets a
+     * copy. The (already compressed) content is shared.
+     */
+    private static PdfStream copy(PdfStream stream) {
+        PdfStream result = new PdfStream(stream.getBytes());
+        result.putAll(stream);
+        return result;
+    }
+
+    private static BitSet toBitSet(Set<Integer> glyphs) {
+        BitSet result = new BitSet();
+        for (Iterator<Integer> i = glyphs.iterator(); i.hasNext(); ) {
+            result.set(i.next().intValue());
+        }
+        return result;
+    }
+
+    private static final class SubsetKey {
+        private final BaseFont _font;
+        private final int _compressionLevel;
+        private final BitSet _glyphs;
+        private final int _glyphCount;
+
+        SubsetKey(BaseFont font, BitSet glyphs) {
+            _font = font;
+            _compressionLevel = font.getCompressionLevel();
+            _glyphs = glyphs;
+            _glyphCount = glyphs.cardinality();
+        }
+
+        boolean isSameFont(BaseFont font) {
+            return _font == font && _compressionLevel == font.getCompressionLevel();
+        }
+
+        boolean contains(BitSet glyphs) {
+            BitSet missing = (BitSet) glyphs.clone();
+            missing.andNot(_glyphs);
+            return missing.isEmpty();
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof SubsetKey)) {
+                return false;
+            }
+            SubsetKey other = (SubsetKey) o;
+            return other._font == _font && other._compressionLevel == _compressionLevel &&
+                    other._glyphs.equals(_glyphs);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(_font) * 31 + _glyphs.hashCode();
+        }
+    }
+
+    private static final class SubsetCachingWriter extends PdfWriter {
+        SubsetCachingWriter(PdfDocument pdf, OutputStream os) {
+            super(pdf, os);
+        }
+
+        protected TtfUnicodeWriter getTtfUnicodeWriter() {
+            if (ttfUnicodeWriter == null) {
+                ttfUnicodeWriter = new CachingTtfUnicodeWriter(this);
+            }
+            return ttfUnicodeWriter;
+        }
+    }
+}
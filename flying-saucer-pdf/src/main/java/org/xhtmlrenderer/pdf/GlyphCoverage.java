@@ -0,0 +1,87 @@
+package org.xhtmlrenderer.pdf;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.itextpdf.text.pdf.BaseFont;
+
+/**
+ * The characters a font has glyphs for, as a bitset built lazily in blocks
+ * of 256 code points: a block is looked up in the font's cmap the first time
+ * one of its characters is asked for, so text in one script only costs the
+ * lookups of the few blocks it uses. Blocks of the BMP are kept in an array,
+ * those of the supplementary planes (only supported by Unicode TrueType
+ * fonts) in a map.
+ * <p>
+ * Thread-safe: fonts are shared between renderers, see {@link FontFaceCache}.
+ * Blocks may be built twice by concurrent lookups, with the same result.
+ */
+final class GlyphCoverage {
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final BaseFont _font;
+    private final boolean _supplementary;
+
+    private final Block[] _bmp = new Block[0x10000 >> BLOCK_SHIFT];
+    private final ConcurrentHashMap<Integer, Block> _planes = new ConcurrentHashMap<Integer, Block>();
+
+    GlyphCoverage(BaseFont font) {
+        _font = font;
+        _supplementary = font.getFontType() == BaseFont.FONT_TYPE_TTUNI;
+    }
+
+    /**
+     * Whether the font has a glyph for <code>codePoint</code>.
+     */
+    boolean contains(int codePoint) {
+        int index = codePoint >> BLOCK_SHIFT;
+        Block block;
+        if (codePoint < 0x10000) {
+            block = _bmp[index];
+            if (block == null) {
+                block = createBlock(index);
+                _bmp[index] = block;
+            }
+        } else {
+            if (! _supplementary) {
+                return false;
+            }
+            Integer key = Integer.valueOf(index);
+            block = _planes.get(key);
+            if (block == null) {
+                block = createBlock(index);
+                _planes.put(key, block);
+            }
+        }
+        return block.contains(codePoint & (BLOCK_SIZE - 1));
+    }
+
+    private Block createBlock(int index) {
+        long[] bits = new long[BLOCK_SIZE / 64];
+        int start = index << BLOCK_SHIFT;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int codePoint = start + i;
+            // Surrogates only exist in pairs
+            if ((codePoint < 0xd800 || codePoint > 0xdfff) && _font.charExists(codePoint)) {
+                bits[i >> 6] |= 1L << i;
+            }
+        }
+        return new Block(bits);
+    }
+
+    /**
+     * The final field makes a block's bits visible to every thread that sees
+     * the block.
+     */
+    private static final class Block {
+        private final long[] _bits;
+
+        Block(long[] bits) {
+            _bits = bits;
+        }
+
+        boolean contains(int offset) {
+            return (_bits[offset >> 6] & (1L << offset)) != 0;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jsoup.nodes.Document;
+import org.xhtmlrenderer.layout.ParallelSupport;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+
+/**
+ * Writes a batch of documents into one PDF, e.g. a print file of many
+ * statements. Each document is loaded and laid out by its own
+ * {@link ITextRenderer} on the shared fork/join pool, a few documents ahead
+ * of the one being written, and the documents are written one after another
+ * in the order they were added. Bookmarks of all documents are added to the
+ * outline and named destinations to one name tree; if several documents use
+ * the same destination name, the first one wins.
+ * <p>
+ * Renderers are created by {@link #createRenderer()}, which may be
+ * overridden to configure them (e.g. to register fonts). The first renderer
+ * creates the PDF, so its PDF version, compression, encryption, listener and
+ * document information apply to the whole file. Built-in fonts are shared by
+ * all documents; to also share the fonts of <code>@font-face</code> rules
+ * instead of embedding them once per document, enable {@link FontFaceCache}.
+ */
+public class ITextBatchRenderer {
+    private final List<DocumentSource> _documents = new ArrayList<DocumentSource>();
+
+    private boolean _continuousPageNumbers;
+
+    /**
+     * Adds the document at <code>uri</code>.
+     */
+    public void addDocument(final String uri) {
+        _documents.add(new DocumentSource() {
+            public void setDocument(ITextRenderer renderer) {
+                renderer.setDocument(uri);
+            }
+        });
+    }
+
+    public void addDocument(final Document doc, final String url) {
+        _documents.add(new DocumentSource() {
+            public void setDocument(ITextRenderer renderer) {
+                renderer.setDocument(doc, url);
+            }
+        });
+    }
+
+    public void addDocument(final File file) {
+        _documents.add(new DocumentSource() {
+            public void setDocument(ITextRenderer renderer) throws IOException {
+                renderer.setDocument(file);
+            }
+        });
+    }
+
+    public void addDocumentFromString(String content) {
+        addDocumentFromString(content, null);
+    }
+
+    public void addDocumentFromString(final String content, final String baseUrl) {
+        _documents.add(new DocumentSource() {
+            public void setDocument(ITextRenderer renderer) {
+                renderer.setDocumentFromString(content, baseUrl);
+            }
+        });
+    }
+
+    public int getDocumentCount() {
+        return _documents.size();
+    }
+
+    public void clear() {
+        _documents.clear();
+    }
+
+    /**
+     * Whether page numbers (<code>counter(page)</code>) continue from one
+     * document to the next. By default each document starts with page 1.
+     */
+    public boolean isContinuousPageNumbers() {
+        return _continuousPageNumbers;
+    }
+
+    public void setContinuousPageNumbers(boolean continuousPageNumbers) {
+        _continuousPageNumbers = continuousPageNumbers;
+    }
+
+    /**
+     * Creates the renderer for one document. Called on a worker thread of the
+     * fork/join pool, once per document.
+     */
+    protected ITextRenderer createRenderer() {
+        return new ITextRenderer();
+    }
+
+    /**
+     * Lays out the documents and writes them to <code>os</code> as one PDF.
+     * <p>
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     */
+    public void createPDF(OutputStream os) throws DocumentException, IOException {
+        if (_documents.isEmpty()) {
+            throw new IllegalStateException("No documents to write");
+        }
+
+        ForkJoinPool pool = ParallelSupport.getPool();
+        // Documents are laid out only this far ahead of the one being
+        // written, so a large batch doesn't have to fit in memory at once
+        int maxPending = Math.max(pool.getParallelism() * 2, 2);
+
+        LinkedList<LayoutTask> pending = new LinkedList<LayoutTask>();
+        Iterator<DocumentSource> documents = _documents.iterator();
+        try {
+            while (documents.hasNext() && pending.size() < maxPending) {
+                pending.add(submit(pool, documents.next()));
+            }
+
+            Map<String, PdfIndirectReference> dests = new TreeMap<String, PdfIndirectReference>();
+            ITextRenderer first = null;
+            int pageCount = 0;
+            while (!pending.isEmpty()) {
+                ITextRenderer renderer = pending.removeFirst().getRenderer();
+                if (documents.hasNext()) {
+                    pending.add(submit(pool, documents.next()));
+                }
+
+                int initialPageNo = _continuousPageNumbers ? pageCount + 1 : 0;
+                renderer.getOutputDevice().setNamedDestinations(dests);
+                if (first == null) {
+                    renderer.createPDF(os, false, initialPageNo, false);
+                    first = renderer;
+                } else {
+                    renderer.writeNextDocument(first, initialPageNo);
+                    renderer.getOutputDevice().transferReaders(first.getOutputDevice());
+                }
+                pageCount += renderer.getRootBox().getLayer().getPages().size();
+            }
+
+            ITextOutputDevice.writeNamedDestinations(first.getWriter(), dests);
+            first.finishPDF();
+        } finally {
+            for (LayoutTask task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private LayoutTask submit(ForkJoinPool pool, DocumentSource source) {
+        LayoutTask task = new LayoutTask(this, source);
+        pool.execute(task);
+        return task;
+    }
+
+    private interface DocumentSource {
+        void setDocument(ITextRenderer renderer) throws IOException;
+    }
+
+    private static final class LayoutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ITextBatchRenderer _batch;
+        private final DocumentSource _source;
+
+        private ITextRenderer _renderer;
+        private IOException _exception;
+
+        LayoutTask(ITextBatchRenderer batch, DocumentSource source) {
+            _batch = batch;
+            _source = source;
+        }
+
+        protected void compute() {
+            // The renderer's SharedContext sets the error thread locals of
+            // the thread creating it, usually a pool worker
+            ParallelSupport.ErrorContext previous = ParallelSupport.ErrorContext.current();
+            try {
+                ITextRenderer renderer = _batch.createRenderer();
+                _source.setDocument(renderer);
+                renderer.layout();
+                _renderer = renderer;
+            } catch (IOException e) {
+                _exception = e;
+            } finally {
+                previous.restore();
+            }
+        }
+
+        /**
+         * Waits for the layout to complete and returns the renderer.
+         */
+        ITextRenderer getRenderer() throws IOException {
+            join();
+            if (_exception != null) {
+                throw _exception;
+            }
+            return _renderer;
+        }
+    }
+}
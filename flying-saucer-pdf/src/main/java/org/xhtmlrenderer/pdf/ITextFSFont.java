@@ -23,11 +23,23 @@ import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
 import org.xhtmlrenderer.render.FSFont;
 
 public class ITextFSFont implements FSFont {
+    private static final FontDescription[] NO_FALLBACKS = new FontDescription[0];
+
     private FontDescription _font;
+    private FontDescription[] _fallbacks;
     private float _size;
     
     public ITextFSFont(FontDescription font, float size) {
+        this(font, NO_FALLBACKS, size);
+    }
+
+    /**
+     * @param fallbacks the fonts used, in order, for characters
+     * <code>font</code> has no glyph for
+     */
+    public ITextFSFont(FontDescription font, FontDescription[] fallbacks, float size) {
         _font = font;
+        _fallbacks = fallbacks;
         _size = size;
     }
 
@@ -38,4 +50,45 @@ public class ITextFSFont implements FSFont {
     public FontDescription getFontDescription() {
         return _font;
     }
+
+    public FontDescription[] getFallbacks() {
+        return _fallbacks;
+    }
+
+    public boolean hasFallbacks() {
+        return _fallbacks.length > 0;
+    }
+
+    /**
+     * Returns the first font having a glyph for <code>codePoint</code>, or
+     * the primary font if none has.
+     */
+    public FontDescription getFontDescription(int codePoint) {
+        if (_fallbacks.length == 0 || _font.canDisplay(codePoint)) {
+            return _font;
+        }
+        for (int i = 0; i < _fallbacks.length; i++) {
+            if (_fallbacks[i].canDisplay(codePoint)) {
+                return _fallbacks[i];
+            }
+        }
+        return _font;
+    }
+
+    /**
+     * Returns the end of the run of characters starting at
+     * <code>start</code> that are shown with <code>font</code>.
+     */
+    int getRunLimit(String s, int start, FontDescription font) {
+        int len = s.length();
+        int i = start;
+        while (i < len) {
+            int codePoint = s.codePointAt(i);
+            if (getFontDescription(codePoint) != font) {
+                break;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return i;
+    }
 }
@@ -37,6 +37,8 @@ import java.io.*;
 import java.util.*;
 
 public class ITextFontResolver implements FontResolver {
+    private static final FontDescription[] NO_FONTS = new FontDescription[0];
+
     private Map _fontFamilies = createInitialFontMap();
     private Map _fontCache = new HashMap();
 
@@ -111,27 +113,8 @@ public class ITextFontResolver implements FontResolver {
                 continue;
             }
 
-            byte[] font1 = _sharedContext.getUac().getBinaryResource(src.asString());
-            if (font1 == null) {
-                XRLog.exception("Could not load font " + src.asString());
-                continue;
-            }
-
-            byte[] font2 = null;
             FSDerivedValue metricsSrc = style.valueByName(CSSName.FS_FONT_METRIC_SRC);
-            if (metricsSrc != IdentValue.NONE) {
-                font2 = _sharedContext.getUac().getBinaryResource(metricsSrc.asString());
-                if (font2 == null) {
-                    XRLog.exception("Could not load font metric data " + src.asString());
-                    continue;
-                }
-            }
-
-            if (font2 != null) {
-                byte[] t = font1;
-                font1 = font2;
-                font2 = t;
-            }
+            String metricsUri = metricsSrc == IdentValue.NONE ? null : metricsSrc.asString();
 
             boolean embedded = style.isIdent(CSSName.FS_PDF_FONT_EMBED, IdentValue.EMBED);
 
@@ -141,14 +124,43 @@ public class ITextFontResolver implements FontResolver {
             if (rule.hasFontFamily()) {
                 fontFamily = style.valueByName(CSSName.FONT_FAMILY).asString();
             }
-            try {
-                addFontFaceFont(fontFamily, src.asString(), encoding, embedded, font1, font2);
-            } catch (DocumentException e) {
-                XRLog.exception("Could not load font " + src.asString(), e);
-                continue;
-            } catch (IOException e) {
-                XRLog.exception("Could not load font " + src.asString(), e);
+
+            FontDescription font = FontFaceCache.get(src.asString(), metricsUri, encoding, embedded);
+            if (font == null) {
+                byte[] font1 = _sharedContext.getUac().getBinaryResource(src.asString());
+                if (font1 == null) {
+                    XRLog.exception("Could not load font " + src.asString());
+                    continue;
+                }
+
+                byte[] font2 = null;
+                if (metricsUri != null) {
+                    font2 = _sharedContext.getUac().getBinaryResource(metricsUri);
+                    if (font2 == null) {
+                        XRLog.exception("Could not load font metric data " + src.asString());
+                        continue;
+                    }
+                }
+
+                if (font2 != null) {
+                    byte[] t = font1;
+                    font1 = font2;
+                    font2 = t;
+                }
+
+                try {
+                    font = loadFontFaceFont(src.asString(), encoding, embedded, font1, font2);
+                } catch (DocumentException e) {
+                    XRLog.exception("Could not load font " + src.asString(), e);
+                    continue;
+                } catch (IOException e) {
+                    XRLog.exception("Could not load font " + src.asString(), e);
+                    continue;
+                }
+                FontFaceCache.put(src.asString(), metricsUri, encoding, embedded, font);
             }
+
+            addFontFaceFont(fontFamily, src.asString(), font);
         }
     }
 
@@ -242,34 +254,24 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
-    private void addFontFaceFont(
-            String fontFamilyNameOverride, String uri, String encoding, boolean embedded, byte[] afmttf, byte[] pfb)
+    /**
+     * Loads the font of a <code>@font-face</code> rule, returning it with its
+     * metrics, but not yet added to any font family.
+     */
+    private FontDescription loadFontFaceFont(
+            String uri, String encoding, boolean embedded, byte[] afmttf, byte[] pfb)
             throws DocumentException, IOException {
         String lower = uri.toLowerCase();
-        if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
+        if (isTrueType(lower)) {
             BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
 
-            String[] fontFamilyNames;
-            if (fontFamilyNameOverride != null) {
-                fontFamilyNames = new String[] { fontFamilyNameOverride };
-            } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
-            }
-
-            for (int i = 0; i < fontFamilyNames.length; i++) {
-                FontFamily fontFamily = getFontFamily(fontFamilyNames[i]);
-
-                FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                descr.setFromFontFace(true);
-
-                fontFamily.addFontDescription(descr);
+            FontDescription descr = new FontDescription(font);
+            try {
+                TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
+            } catch (Exception e) {
+                throw new XRRuntimeException(e.getMessage(), e);
             }
+            return descr;
         } else if (lower.endsWith(".afm") || lower.endsWith(".pfm") || lower.endsWith(".pfb") || lower.endsWith(".pfa")) {
             if (embedded && pfb == null) {
                 throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
@@ -279,20 +281,39 @@ public class ITextFontResolver implements FontResolver {
             BaseFont font = BaseFont.createFont(
                     name, encoding, embedded, false, afmttf, pfb);
 
-            String fontFamilyName = font.getFamilyFontName()[0][3];
-            FontFamily fontFamily = getFontFamily(fontFamilyName);
-
-            FontDescription descr = new FontDescription(font);
-            descr.setFromFontFace(true);
             // XXX Need to set weight, underline position, etc.  This information
             // is contained in the AFM file (and even parsed by Type1Font), but
             // unfortunately it isn't exposed to the caller.
-            fontFamily.addFontDescription(descr);
+            return new FontDescription(font);
         } else {
             throw new IOException("Unsupported font type");
         }
     }
 
+    private void addFontFaceFont(String fontFamilyNameOverride, String uri, FontDescription font) {
+        String[] fontFamilyNames;
+        if (! isTrueType(uri.toLowerCase())) {
+            fontFamilyNames = new String[] { font.getFont().getFamilyFontName()[0][3] };
+        } else if (fontFamilyNameOverride != null) {
+            fontFamilyNames = new String[] { fontFamilyNameOverride };
+        } else {
+            fontFamilyNames = TrueTypeUtil.getFamilyNames(font.getFont());
+        }
+
+        for (int i = 0; i < fontFamilyNames.length; i++) {
+            FontFamily fontFamily = getFontFamily(fontFamilyNames[i]);
+
+            FontDescription descr = new FontDescription(font);
+            descr.setFromFontFace(true);
+
+            fontFamily.addFontDescription(descr);
+        }
+    }
+
+    private static boolean isTrueType(String lower) {
+        return lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1;
+    }
+
     private byte[] readFile(String path) throws IOException {
         File f = new File(path);
         if (f.exists()) {
@@ -340,9 +361,12 @@ public class ITextFontResolver implements FontResolver {
         }
         if (families != null) {
             for (int i = 0; i < families.length; i++) {
-                FSFont font = resolveFont(ctx, families[i], size, weight, style, variant);
+                FontDescription font = resolveFontDescription(families[i], weight, style);
                 if (font != null) {
-                    return font;
+                    if (_sharedContext.getRendererSettings().isFontFallback()) {
+                        return new ITextFSFont(font, resolveFallbacks(families, i + 1, font, weight, style), size);
+                    }
+                    return new ITextFSFont(font, size);
                 }
             }
         }
@@ -350,6 +374,28 @@ public class ITextFontResolver implements FontResolver {
         return resolveFont(ctx, "Serif", size, weight, style, variant);
     }
 
+    /**
+     * Resolves the fonts of <code>families</code> from <code>start</code> on
+     * used for the characters <code>primary</code> has no glyph for.
+     */
+    private FontDescription[] resolveFallbacks(
+            String[] families, int start, FontDescription primary, IdentValue weight, IdentValue style) {
+        List<FontDescription> result = null;
+        for (int i = start; i < families.length; i++) {
+            FontDescription font = resolveFontDescription(families[i], weight, style);
+            if (font != null && font != primary && (result == null || ! result.contains(font))) {
+                if (result == null) {
+                    result = new ArrayList<FontDescription>();
+                }
+                result.add(font);
+            }
+        }
+        if (result == null) {
+            return NO_FONTS;
+        }
+        return result.toArray(new FontDescription[result.size()]);
+    }
+
     private String normalizeFontFamily(String fontFamily) {
         String result = fontFamily;
         // strip off the "s if they are there
@@ -375,12 +421,21 @@ public class ITextFontResolver implements FontResolver {
     }
 
     private FSFont resolveFont(SharedContext ctx, String fontFamily, float size, IdentValue weight, IdentValue style, IdentValue variant) {
+        FontDescription result = resolveFontDescription(fontFamily, weight, style);
+        if (result != null) {
+            return new ITextFSFont(result, size);
+        }
+
+        return null;
+    }
+
+    private FontDescription resolveFontDescription(String fontFamily, IdentValue weight, IdentValue style) {
         String normalizedFontFamily = normalizeFontFamily(fontFamily);
 
         String cacheKey = getHashName(normalizedFontFamily, weight, style);
         FontDescription result = (FontDescription)_fontCache.get(cacheKey);
         if (result != null) {
-            return new ITextFSFont(result, size);
+            return result;
         }
 
         FontFamily family = (FontFamily)_fontFamilies.get(normalizedFontFamily);
@@ -388,7 +443,7 @@ public class ITextFontResolver implements FontResolver {
             result = family.match(convertWeightToInt(weight), style);
             if (result != null) {
                 _fontCache.put(cacheKey, result);
-                return new ITextFSFont(result, size);
+                return result;
             }
         }
 
@@ -724,6 +779,8 @@ public class ITextFontResolver implements FontResolver {
 
         private boolean _isFromFontFace;
 
+        private volatile GlyphCoverage _coverage;
+
         public FontDescription() {
         }
 
@@ -738,12 +795,39 @@ public class ITextFontResolver implements FontResolver {
             setMetricDefaults();
         }
 
+        FontDescription(FontDescription other) {
+            _font = other._font;
+            _style = other._style;
+            _weight = other._weight;
+            _underlinePosition = other._underlinePosition;
+            _underlineThickness = other._underlineThickness;
+            _yStrikeoutSize = other._yStrikeoutSize;
+            _yStrikeoutPosition = other._yStrikeoutPosition;
+            _isFromFontFace = other._isFromFontFace;
+            _coverage = other._coverage;
+        }
+
         public BaseFont getFont() {
             return _font;
         }
 
         public void setFont(BaseFont font) {
             _font = font;
+            _coverage = null;
+        }
+
+        /**
+         * Whether the font has a glyph for <code>codePoint</code>. Looked up
+         * in a bitset built lazily from the font's cmap, so repeated lookups
+         * are cheap.
+         */
+        public boolean canDisplay(int codePoint) {
+            GlyphCoverage coverage = _coverage;
+            if (coverage == null) {
+                coverage = new GlyphCoverage(_font);
+                _coverage = coverage;
+            }
+            return coverage.contains(codePoint);
         }
 
         public int getWeight() {
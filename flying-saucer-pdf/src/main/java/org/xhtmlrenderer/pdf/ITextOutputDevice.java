@@ -32,6 +32,7 @@ import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 
@@ -84,6 +86,7 @@ import org.xhtmlrenderer.util.XRRuntimeException;
 import com.itextpdf.text.BaseColor;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.BaseFont;
 import com.itextpdf.text.pdf.CMYKColor;
 import com.itextpdf.text.pdf.PdfAction;
 import com.itextpdf.text.pdf.PdfAnnotation;
@@ -137,6 +140,10 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private Stroke _originalStroke = null;
     private Stroke _oldStroke = null;
 
+    // The clip in page space. Kept as a rectangle as long as only
+    // rectangles are clipped to (as nearly all clips are), promoted to an
+    // Area by the first other shape.
+    private Rectangle2D _clipRect;
     private Area _clip;
 
     private SharedContext _sharedContext;
@@ -145,6 +152,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private PdfWriter _writer;
 
     private Map _readerCache = new HashMap();
+    private List _openReaders = new ArrayList();
 
     private PdfDestination _defaultDestination;
 
@@ -156,12 +164,25 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private int _startPageNo;
 
+    private Map _namedDestinations;
+
     private int _nextFormFieldIndex;
 
     private Set _linkTargetAreas;
     
     private boolean haveOpacity = false;
 
+    // The text object left open by drawString() and the text state set in
+    // it, so consecutive strings share one BT/ET block. Any other drawing
+    // ends it, see endText().
+    private boolean _inText;
+    private BaseFont _textFont;
+    private float _textFontSize;
+    private float _textStrokeWidth;
+    private float _textCharSpacing;
+    private float _textWordSpacing;
+    private final double[] _textMatrix = new double[6];
+
     public ITextOutputDevice(float dotsPerPoint) {
         _dotsPerPoint = dotsPerPoint;
     }
@@ -195,13 +216,14 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
         if (_defaultDestination == null) {
             _defaultDestination = new PdfDestination(PdfDestination.FITH, height);
-            _defaultDestination.addPage(_writer.getPageReference(1));
+            _defaultDestination.addPage(_writer.getPageReference(_startPageNo + 1));
         }
 
         _linkTargetAreas = new HashSet();
     }
 
     public void finishPage() {
+        endText();
         _currentPage.restoreState();
     }
 
@@ -482,13 +504,48 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void drawString(String s, float x, float y, JustificationInfo info) {
-        if (Configuration.isTrue("xr.renderer.replace-missing-characters", false)) {
+        if (_sharedContext.getRendererSettings().isReplaceMissingCharacters()) {
             s = replaceMissingCharacters(s);
         }
         if (s.length() == 0)
             return;
+        if (_font.hasFallbacks()) {
+            drawRuns(s, x, y, info);
+        } else {
+            drawRun(s, _font.getFontDescription(), x, y, info);
+        }
+    }
+
+    /**
+     * Draws <code>s</code> in runs of characters shown with the same font of
+     * the current font's fallbacks, each run after the width and the
+     * justification adjustments of the previous ones.
+     */
+    private void drawRuns(String s, float x, float y, JustificationInfo info) {
+        int len = s.length();
+        int start = 0;
+        while (start < len) {
+            FontDescription desc = _font.getFontDescription(s.codePointAt(start));
+            int end = _font.getRunLimit(s, start, desc);
+            String run = start == 0 && end == len ? s : s.substring(start, end);
+            drawRun(run, desc, x, y, info);
+            x += desc.getFont().getWidthPoint(run, _font.getSize2D());
+            if (info != null) {
+                for (int i = start; i < end; i++) {
+                    char c = s.charAt(i);
+                    if (c == ' ' || c == '\u00a0' || c == '\u3000') {
+                        x += info.getSpaceAdjust();
+                    } else {
+                        x += info.getNonSpaceAdjust();
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void drawRun(String s, FontDescription desc, float x, float y, JustificationInfo info) {
         PdfContentByte cb = _currentPage;
-        ensureFillColor();
         AffineTransform at = (AffineTransform) getTransform().clone();
         at.translate(x, y);
         AffineTransform inverse = normalizeMatrix(at);
@@ -497,50 +554,168 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         inverse.scale(_dotsPerPoint, _dotsPerPoint);
         double[] mx = new double[6];
         inverse.getMatrix(mx);
-        cb.beginText();
         // Check if bold or italic need to be emulated
-        boolean resetMode = false;
-        FontDescription desc = _font.getFontDescription();
+        float strokeWidth = 0;
         float fontSize = _font.getSize2D() / _dotsPerPoint;
-        cb.setFontAndSize(desc.getFont(), fontSize);
-        float b = (float) mx[1];
-        float c = (float) mx[2];
         FontSpecification fontSpec = getFontSpecification();
         if (fontSpec != null) {
             int need = ITextFontResolver.convertWeightToInt(fontSpec.fontWeight);
             int have = desc.getWeight();
             if (need > have) {
-                cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL_STROKE);
-                float lineWidth = fontSize * 0.04f; // 4% of font size
-                cb.setLineWidth(lineWidth);
-                resetMode = true;
+                strokeWidth = fontSize * 0.04f; // 4% of font size
             }
             if ((fontSpec.fontStyle == IdentValue.ITALIC) && (desc.getStyle() != IdentValue.ITALIC)) {
-                b = 0f;
-                c = 0.21256f;
+                mx[1] = 0f;
+                mx[2] = 0.21256f;
             }
         }
-        cb.setTextMatrix((float) mx[0], b, c, (float) mx[3], (float) mx[4], (float) mx[5]);
+
+        ensureFillColor();
+        if (! _inText) {
+            cb.beginText();
+            _inText = true;
+            _textFont = null;
+            _textStrokeWidth = 0;
+            _textCharSpacing = 0;
+            _textWordSpacing = 0;
+            // BT resets the text matrix
+            _textMatrix[0] = 1;
+            _textMatrix[1] = 0;
+            _textMatrix[2] = 0;
+            _textMatrix[3] = 1;
+            _textMatrix[4] = 0;
+            _textMatrix[5] = 0;
+        }
+        if (desc.getFont() != _textFont || fontSize != _textFontSize) {
+            cb.setFontAndSize(desc.getFont(), fontSize);
+            _textFont = desc.getFont();
+            _textFontSize = fontSize;
+        }
+        if (strokeWidth != _textStrokeWidth) {
+            if (strokeWidth == 0) {
+                cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL);
+                cb.setLineWidth(1);
+            } else {
+                if (_textStrokeWidth == 0) {
+                    cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL_STROKE);
+                }
+                cb.setLineWidth(strokeWidth);
+            }
+            _textStrokeWidth = strokeWidth;
+        }
+        setTextMatrix(mx);
         if (info == null) {
+            setTextSpacing(0, 0);
             cb.showText(s);
         } else {
-            PdfTextArray array = makeJustificationArray(s, info);
-            cb.showText(array);
+            showJustifiedText(s, info);
         }
-        if (resetMode) {
-            cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL);
-            cb.setLineWidth(1);
+    }
+
+    /**
+     * Shows a justified string. The adjustment after every character is set
+     * as character spacing (Tc) and the additional adjustment after spaces as
+     * word spacing (Tw). Word spacing only applies to the single byte code
+     * 32, so with other spaces or fonts with two byte encodings the string
+     * is split into words in a TJ array instead, with the adjustment between
+     * them. As opposed to the adjustments, the spacing also applies after the
+     * last character, which doesn't matter as every string is positioned
+     * explicitly.
+     */
+    private void showJustifiedText(String s, JustificationInfo info) {
+        float charSpacing = info.getNonSpaceAdjust() / _dotsPerPoint;
+        float spaceExtra = (info.getSpaceAdjust() - info.getNonSpaceAdjust()) / _dotsPerPoint;
+
+        int fontType = _textFont.getFontType();
+        boolean singleByte = fontType == BaseFont.FONT_TYPE_T1 || fontType == BaseFont.FONT_TYPE_TT;
+
+        setTextSpacing(charSpacing, singleByte ? spaceExtra : 0);
+
+        PdfTextArray array = null;
+        int start = 0;
+        int len = s.length();
+        for (int i = 0; i < len - 1; i++) {
+            char c = s.charAt(i);
+            if ((c == ' ' && ! singleByte) || c == '\u00a0' || c == '\u3000') {
+                if (array == null) {
+                    array = new PdfTextArray();
+                }
+                array.add(s.substring(start, i + 1));
+                array.add(-spaceExtra * 1000 / _textFontSize);
+                start = i + 1;
+            }
+        }
+
+        if (array == null) {
+            _currentPage.showText(s);
+        } else {
+            array.add(s.substring(start));
+            _currentPage.showText(array);
+        }
+    }
+
+    private void setTextSpacing(float charSpacing, float wordSpacing) {
+        if (charSpacing != _textCharSpacing) {
+            _currentPage.setCharacterSpacing(charSpacing);
+            _textCharSpacing = charSpacing;
+        }
+        if (wordSpacing != _textWordSpacing) {
+            _currentPage.setWordSpacing(wordSpacing);
+            _textWordSpacing = wordSpacing;
+        }
+    }
+
+    /**
+     * Positions the next string at <code>mx</code>. Within a line (same
+     * unscaled, unskewed matrix) the position is given relative to the
+     * previous string, rounded to the precision positions are written with,
+     * so rounding errors don't add up along the line.
+     */
+    private void setTextMatrix(double[] mx) {
+        double[] current = _textMatrix;
+        if (current[0] == mx[0] && current[1] == mx[1] &&
+                current[2] == mx[2] && current[3] == mx[3] &&
+                mx[0] == 1 && mx[1] == 0 && mx[2] == 0 && mx[3] == 1) {
+            double dx = Math.round((mx[4] - current[4]) * 100) / 100.0;
+            double dy = Math.round((mx[5] - current[5]) * 100) / 100.0;
+            _currentPage.moveText((float) dx, (float) dy);
+            current[4] += dx;
+            current[5] += dy;
+        } else {
+            _currentPage.setTextMatrix(
+                    (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
+            System.arraycopy(mx, 0, current, 0, 6);
+        }
+    }
+
+    /**
+     * Ends the text object left open by {@link #drawString(String, float, float, JustificationInfo)},
+     * if any. Must be called before anything else is written to the page.
+     */
+    private void endText() {
+        if (_inText) {
+            if (_textStrokeWidth != 0) {
+                _currentPage.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL);
+                _currentPage.setLineWidth(1);
+            }
+            // Text state outlives the text object
+            setTextSpacing(0, 0);
+            _currentPage.endText();
+            _inText = false;
         }
-        cb.endText();
     }
 
+    /**
+     * Replaces the characters that neither the current font nor its
+     * fallbacks have a glyph for. Looked up in the fonts' glyph coverage, see
+     * {@link FontDescription#canDisplay(int)}; logged once per string.
+     */
     private String replaceMissingCharacters(String string) {
-        char[] charArr = string.toCharArray();
-        char replacementCharacter = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+        char replacementCharacter = _sharedContext.getRendererSettings().getMissingCharacterReplacement();
 
         // first check to see if the replacement character even exists in the
         // given font. If not, then do nothing.
-        if (!_font.getFontDescription().getFont().charExists(replacementCharacter)) {
+        if (!_font.getFontDescription().canDisplay(replacementCharacter)) {
             XRLog.render(Level.INFO, "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
                     + "]. No replacement will occur.");
             return string;
@@ -548,35 +723,33 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
         // iterate through each character in the string and make an appropriate
         // replacement
-        for (int i = 0; i < charArr.length; i++) {
-            if (!(charArr[i] == ' ' || charArr[i] == '\u00a0' || charArr[i] == '\u3000' || _font.getFontDescription().getFont()
-                    .charExists(charArr[i]))) {
-                XRLog.render(Level.INFO, "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
-                        + "]. Replacing with '" + replacementCharacter + "'");
-                charArr[i] = replacementCharacter;
+        StringBuilder result = null;
+        StringBuilder missing = null;
+        int len = string.length();
+        for (int i = 0; i < len; ) {
+            int codePoint = string.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+            if (!(codePoint == ' ' || codePoint == '\u00a0' || codePoint == '\u3000'
+                    || _font.getFontDescription(codePoint).canDisplay(codePoint))) {
+                if (result == null) {
+                    result = new StringBuilder(len);
+                    result.append(string, 0, i);
+                    missing = new StringBuilder();
+                }
+                result.append(replacementCharacter);
+                missing.append('[').append(string, i, next).append(':').append(codePoint).append(']');
+            } else if (result != null) {
+                result.append(string, i, next);
             }
+            i = next;
         }
 
-        return String.valueOf(charArr);
-    }
-
-    private PdfTextArray makeJustificationArray(String s, JustificationInfo info) {
-        PdfTextArray array = new PdfTextArray();
-        int len = s.length();
-        for (int i = 0; i < len; i++) {
-            char c = s.charAt(i);
-            array.add(Character.toString(c));
-            if (i != len - 1) {
-                float offset;
-                if (c == ' ' || c == '\u00a0' || c == '\u3000') {
-                    offset = info.getSpaceAdjust();
-                } else {
-                    offset = info.getNonSpaceAdjust();
-                }
-                array.add((-offset / _dotsPerPoint) * 1000 / (_font.getSize2D() / _dotsPerPoint));
-            }
+        if (result == null) {
+            return string;
         }
-        return array;
+        XRLog.render(Level.INFO, "Missing characters " + missing + " in string [" + string
+                + "]. Replacing with '" + replacementCharacter + "'");
+        return result.toString();
     }
 
     private AffineTransform getTransform() {
@@ -598,6 +771,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public PdfContentByte getCurrentPage() {
+        endText();
         return _currentPage;
     }
 
@@ -606,6 +780,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         if (s == null)
             return;
 
+        endText();
+
         if (drawType == STROKE) {
             if (!(_stroke instanceof BasicStroke)) {
                 s = _stroke.createStrokedShape(s);
@@ -785,11 +961,30 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     public void clip(Shape s) {
         if (s != null) {
+            Rectangle2D rect = transformRectangle(s, _transform);
+            if (rect != null && _clip == null) {
+                if (_clipRect == null) {
+                    _clipRect = rect;
+                } else {
+                    Rectangle2D.intersect(_clipRect, rect, _clipRect);
+                    if (_clipRect.isEmpty()) {
+                        _clipRect = new Rectangle2D.Double();
+                    }
+                }
+                clipToRectangle(rect);
+                return;
+            }
+
             s = _transform.createTransformedShape(s);
-            if (_clip == null)
+            if (_clip == null) {
                 _clip = new Area(s);
-            else
+                if (_clipRect != null) {
+                    _clip.intersect(new Area(_clipRect));
+                    _clipRect = null;
+                }
+            } else {
                 _clip.intersect(new Area(s));
+            }
             followPath(s, CLIP);
         } else {
             throw new XRRuntimeException("Shape is null, unexpected");
@@ -798,6 +993,9 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     public Shape getClip() {
         try {
+            if (_clipRect != null) {
+                return transformRectangle(_clipRect, _transform.createInverse());
+            }
             return _transform.createInverse().createTransformedShape(_clip);
         } catch (NoninvertibleTransformException e) {
             return null;
@@ -806,21 +1004,58 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     public void setClip(Shape s) {
         PdfContentByte cb = _currentPage;
+        endText();
         cb.restoreState();
         cb.saveState();
-        if (s != null)
-            s = _transform.createTransformedShape(s);
-        if (s == null) {
-            _clip = null;
-        } else {
-            _clip = new Area(s);
-            followPath(s, CLIP);
+        _clip = null;
+        _clipRect = null;
+        if (s != null) {
+            Rectangle2D rect = transformRectangle(s, _transform);
+            if (rect != null) {
+                _clipRect = rect;
+                clipToRectangle(rect);
+            } else {
+                s = _transform.createTransformedShape(s);
+                _clip = new Area(s);
+                followPath(s, CLIP);
+            }
         }
         _fillColor = null;
         _strokeColor = null;
         _oldStroke = null;
     }
 
+    /**
+     * Returns <code>s</code> transformed by <code>at</code> if it is a
+     * rectangle that stays one (<code>at</code> neither rotates nor shears),
+     * <code>null</code> otherwise.
+     */
+    private static Rectangle2D transformRectangle(Shape s, AffineTransform at) {
+        if (!(s instanceof Rectangle2D) ||
+                (at.getType() & (AffineTransform.TYPE_MASK_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM)) != 0) {
+            return null;
+        }
+        Rectangle2D r = (Rectangle2D) s;
+        if (r.isEmpty()) {
+            // Clips everything, wherever it is
+            return new Rectangle2D.Double();
+        }
+        double[] pts = new double[] { r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY() };
+        at.transform(pts, 0, pts, 0, 2);
+        return new Rectangle2D.Double(
+                Math.min(pts[0], pts[2]), Math.min(pts[1], pts[3]),
+                Math.abs(pts[2] - pts[0]), Math.abs(pts[3] - pts[1]));
+    }
+
+    private void clipToRectangle(Rectangle2D rect) {
+        PdfContentByte cb = _currentPage;
+        endText();
+        cb.rectangle((float) rect.getMinX(), normalizeY((float) rect.getMaxY()),
+                (float) rect.getWidth(), (float) rect.getHeight());
+        cb.clip();
+        cb.newPath();
+    }
+
     public Stroke getStroke() {
         return _originalStroke;
     }
@@ -848,6 +1083,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
             inverse.getMatrix(mx);
 
             try {
+                endText();
                 _currentPage.addImage(image, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
             } catch (DocumentException e) {
                 throw new XRRuntimeException(e.getMessage(), e);
@@ -884,6 +1120,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         mx[0] = image.scaleWidth();
         mx[3] = image.scaleHeight();
 
+        endText();
         _currentPage.restoreState();
         _currentPage.addTemplate(page, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
         _currentPage.saveState();
@@ -893,17 +1130,44 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         URI uri = url.toURI();
         PdfReader result = (PdfReader) _readerCache.get(uri);
         if (result == null) {
-            result = new PdfReader(url);
+            result = PDFSourceCache.createReader(url);
             _readerCache.put(uri, result);
+            _openReaders.add(result);
         }
         return result;
     }
 
+    /**
+     * Closes the readers of the PDFs drawn as images. The pages imported
+     * from them are only copied when the PDF is closed, so this must be
+     * called afterwards.
+     */
+    void closeReaders() {
+        for (Iterator i = _openReaders.iterator(); i.hasNext();) {
+            ((PdfReader) i.next()).close();
+        }
+        _openReaders.clear();
+        _readerCache.clear();
+    }
+
+    /**
+     * Leaves closing the readers of this device to <code>device</code>,
+     * which writes to the same PDF.
+     */
+    void transferReaders(ITextOutputDevice device) {
+        device._openReaders.addAll(_openReaders);
+        _openReaders.clear();
+        _readerCache.clear();
+    }
+
     public float getDotsPerPoint() {
         return _dotsPerPoint;
     }
 
     public void start(Document doc) {
+        // the bookmarks of a previous document written with the same device
+        // have already been added to the outline
+        _bookmarks.clear();
         loadBookmarks(doc);
         loadMetadata(doc);
     }
@@ -928,9 +1192,22 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     private void writeNamedDestinations(RenderingContext c) {
+        if (_namedDestinations != null) {
+            addNamedDestinations(c, _namedDestinations);
+        } else {
+            Map dests = new TreeMap();
+            addNamedDestinations(c, dests);
+            try {
+                writeNamedDestinations(_writer, dests);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void addNamedDestinations(RenderingContext c, Map dests) {
         Map idMap = getSharedContext().getIdMap();
         if ((idMap != null) && (!idMap.isEmpty())) {
-            PdfArray dests = new PdfArray();
             try {
                 Iterator it = idMap.entrySet().iterator();
                 while (it.hasNext()) {
@@ -940,33 +1217,48 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
                     if (targetBox.getStyle().isIdent(CSSName.FS_NAMED_DESTINATION, IdentValue.CREATE)) {
                         String anchorName = (String) entry.getKey();
-                        dests.add(new PdfString(anchorName, PdfString.TEXT_UNICODE));
+                        if (dests.containsKey(anchorName)) {
+                            continue;
+                        }
 
                         PdfDestination dest = createDestination(c, targetBox);
                         if (dest != null) {
                             PdfIndirectReference ref = _writer.addToBody(dest).getIndirectReference();
-                            dests.add(ref);
+                            dests.put(anchorName, ref);
                         }
                     }
                 }
-
-                if (!dests.isEmpty()) {
-                    PdfDictionary nametree = new PdfDictionary();
-                    nametree.put(PdfName.NAMES, dests);
-                    PdfIndirectReference nameTreeRef = _writer.addToBody(nametree).getIndirectReference();
-
-                    PdfDictionary names = new PdfDictionary();
-                    names.put(PdfName.DESTS, nameTreeRef);
-                    PdfIndirectReference destinationsRef = _writer.addToBody(names).getIndirectReference();
-
-                    _writer.getExtraCatalog().put(PdfName.NAMES, destinationsRef);
-                }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * Writes the name tree of the named destinations collected with
+     * {@link #setNamedDestinations(Map)}, sorted by name.
+     */
+    static void writeNamedDestinations(PdfWriter writer, Map dests) throws IOException {
+        if (!dests.isEmpty()) {
+            PdfArray names = new PdfArray();
+            for (Iterator it = new TreeMap(dests).entrySet().iterator(); it.hasNext();) {
+                Entry entry = (Entry) it.next();
+                names.add(new PdfString((String) entry.getKey(), PdfString.TEXT_UNICODE));
+                names.add((PdfIndirectReference) entry.getValue());
+            }
+
+            PdfDictionary nametree = new PdfDictionary();
+            nametree.put(PdfName.NAMES, names);
+            PdfIndirectReference nameTreeRef = writer.addToBody(nametree).getIndirectReference();
+
+            PdfDictionary namesDict = new PdfDictionary();
+            namesDict.put(PdfName.DESTS, nameTreeRef);
+            PdfIndirectReference destinationsRef = writer.addToBody(namesDict).getIndirectReference();
+
+            writer.getExtraCatalog().put(PdfName.NAMES, destinationsRef);
+        }
+    }
+
     private int getPageRefY(Box box) {
         if (box instanceof InlineLayoutBox) {
             InlineLayoutBox iB = (InlineLayoutBox) box;
@@ -1001,13 +1293,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         if (head != null) {
             Element bookmarks = JsoupUtil.firstChild(head.select("bookmarks"));
             if (bookmarks != null) {
-                Elements l = bookmarks.select("bookmark");
-                if (l != null) {
-                    for (Iterator i = l.iterator(); i.hasNext();) {
-                        Element e = (Element) i.next();
-                        loadBookmark(null, e);
-                    }
-                }
+                loadBookmarks(null, bookmarks);
             }
         }
     }
@@ -1019,11 +1305,16 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         } else {
             parent.addChild(us);
         }
-        Elements l = bookmark.select("bookmark");
-        if (l != null) {
-            for (Iterator i = l.iterator(); i.hasNext();) {
-                Element e = (Element) i.next();
-                loadBookmark(us, e);
+        loadBookmarks(us, bookmark);
+    }
+
+    // Only the bookmarks directly below parentElement, select() would also
+    // match parentElement itself and all nested bookmarks
+    private void loadBookmarks(Bookmark parent, Element parentElement) {
+        for (Iterator i = parentElement.children().iterator(); i.hasNext();) {
+            Element e = (Element) i.next();
+            if (e.tagName().equals("bookmark")) {
+                loadBookmark(parent, e);
             }
         }
     }
@@ -1262,6 +1553,17 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         _startPageNo = startPageNo;
     }
 
+    /**
+     * Makes {@link #finish(RenderingContext, Box)} add the document's named
+     * destinations to <code>dests</code> (name to destination reference)
+     * instead of writing them, so the destinations of several documents
+     * written to one PDF end up in a single name tree. Names already in
+     * <code>dests</code> are kept.
+     */
+    void setNamedDestinations(Map dests) {
+        _namedDestinations = dests;
+    }
+
     public void drawSelection(RenderingContext c, InlineText inlineText) {
         throw new UnsupportedOperationException();
     }
@@ -1347,6 +1649,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 		BaseColor s = new BaseColor(start.getRed(), start.getGreen(), start.getBlue());
 		BaseColor e = new BaseColor(end.getRed(), end.getGreen(), end.getBlue());
 		PdfShading shader = PdfShading.simpleAxial(_writer, x, y, x + width, y + height, s, e);
+		endText();
 		_currentPage.setShadingFill(new PdfShadingPattern(shader));
 		_currentPage.paintShading(shader);
 	}
@@ -1358,6 +1661,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 			PdfGState gs = new PdfGState();
 			gs.setBlendMode(PdfGState.BM_NORMAL);
 			gs.setFillOpacity(opacity);
+			endText();
 			_currentPage.setGState(gs);
 			haveOpacity = true;
 		}
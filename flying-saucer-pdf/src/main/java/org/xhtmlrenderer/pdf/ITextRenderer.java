@@ -54,6 +54,7 @@ import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.JsoupUtil;
 
 import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfStream;
 import com.itextpdf.text.pdf.PdfWriter;
 
 public class ITextRenderer {
@@ -84,6 +85,9 @@ public class ITextRenderer {
     private final char[] validPdfVersions = new char[] { PdfWriter.VERSION_1_2, PdfWriter.VERSION_1_3, PdfWriter.VERSION_1_4,
             PdfWriter.VERSION_1_5, PdfWriter.VERSION_1_6, PdfWriter.VERSION_1_7 };
 
+    private boolean _fullCompression = Configuration.isTrue("xr.pdf.full-compression", false);
+    private int _compressionLevel = Configuration.valueAsInt("xr.pdf.compression-level", PdfStream.DEFAULT_COMPRESSION);
+
     private PDFCreationListener _listener;
 
     public ITextRenderer() {
@@ -157,7 +161,7 @@ public class ITextRenderer {
         getFontResolver().flushFontFaceFonts();
 
         _sharedContext.reset();
-        if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+        if (_sharedContext.getRendererSettings().isCacheStylesheets()) {
             _sharedContext.getCss().flushStyleSheets();
         } else {
             _sharedContext.getCss().flushAllStyleSheets();
@@ -191,6 +195,39 @@ public class ITextRenderer {
         return _pdfVersion == null ? '0' : _pdfVersion.charValue();
     }
 
+    /**
+     * Sets whether objects (link annotations, form fields, fonts, ...) are
+     * written to compressed object streams, and the cross-reference table
+     * as a compressed stream, instead of as plain text. This requires PDF
+     * 1.5, which the version is raised to if necessary. Defaults to the
+     * <code>xr.pdf.full-compression</code> configuration property.
+     */
+    public void setFullCompression(boolean fullCompression) {
+        _fullCompression = fullCompression;
+    }
+
+    public boolean isFullCompression() {
+        return _fullCompression;
+    }
+
+    /**
+     * Sets the deflate level streams are compressed with, from 0 (none) to
+     * 9 (smallest, slowest), or <code>PdfStream.DEFAULT_COMPRESSION</code>.
+     * Defaults to the <code>xr.pdf.compression-level</code> configuration
+     * property.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != PdfStream.DEFAULT_COMPRESSION &&
+                (compressionLevel < PdfStream.NO_COMPRESSION || compressionLevel > PdfStream.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        _compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel() {
+        return _compressionLevel;
+    }
+
     public void layout() {
         LayoutContext c = newLayoutContext();
         BlockBox root = BoxBuilder.createRootBox(c, _doc);
@@ -243,6 +280,26 @@ public class ITextRenderer {
     }
 
     public void writeNextDocument(int initialPageNo) throws DocumentException, IOException {
+        _pdfDoc.addCreator("Kotek");
+        _pdfDoc.addAuthor("Piesek");
+
+        writeNextDocument(initialPageNo, true);
+    }
+
+    /**
+     * Writes this renderer's document to the PDF <code>first</code> has
+     * started with {@link #createPDF(OutputStream, boolean, int, boolean)},
+     * after the pages written so far. The document information is left as
+     * set by the first document. Used by {@link ITextBatchRenderer}.
+     */
+    void writeNextDocument(ITextRenderer first, int initialPageNo) throws DocumentException, IOException {
+        _pdfDoc = first._pdfDoc;
+        _writer = first._writer;
+
+        writeNextDocument(initialPageNo, false);
+    }
+
+    private void writeNextDocument(int initialPageNo, boolean documentInfo) throws DocumentException, IOException {
         List pages = _root.getLayer().getPages();
 
         RenderingContext c = newRenderingContext();
@@ -255,16 +312,15 @@ public class ITextRenderer {
 
         _pdfDoc.setPageSize(firstPageSize);
         _pdfDoc.newPage();
-        _pdfDoc.addCreator("Kotek");
-        _pdfDoc.addAuthor("Piesek");
 
-        writePDF(pages, c, firstPageSize, _pdfDoc, _writer, false);
+        writePDF(pages, c, firstPageSize, _pdfDoc, _writer, false, documentInfo);
     }
 
     public void finishPDF() {
         if (_pdfDoc != null) {
             fireOnClose();
             _pdfDoc.close();
+            _outputDevice.closeReaders();
         }
     }
 
@@ -287,10 +343,14 @@ public class ITextRenderer {
                 firstPage.getHeight(c) / _dotsPerPoint);
 
         com.itextpdf.text.Document doc = new com.itextpdf.text.Document(firstPageSize, 0, 0, 0, 0);
-        PdfWriter writer = PdfWriter.getInstance(doc, os);
+        PdfWriter writer = FontSubsetCache.createWriter(doc, os);
         if (_pdfVersion != null) {
             writer.setPdfVersion(_pdfVersion.charValue());
         }
+        writer.setCompressionLevel(_compressionLevel);
+        if (_fullCompression) {
+            writer.setFullCompression();
+        }
         if (_pdfEncryption != null) {
             writer.setEncryption(_pdfEncryption.getUserPassword(), _pdfEncryption.getOwnerPassword(),
                     _pdfEncryption.getAllowedPrivileges(), _pdfEncryption.getEncryptionType());
@@ -301,12 +361,13 @@ public class ITextRenderer {
         firePreOpen();
         doc.open();
 
-        writePDF(pages, c, firstPageSize, doc, writer, oneSidedPrint);
+        writePDF(pages, c, firstPageSize, doc, writer, oneSidedPrint, true);
 
         
         if (finish) {
             fireOnClose();
             doc.close();
+            _outputDevice.closeReaders();
         }
     }
 
@@ -329,7 +390,7 @@ public class ITextRenderer {
     }
 
     private void writePDF(List pages, RenderingContext c, com.itextpdf.text.Rectangle firstPageSize, com.itextpdf.text.Document doc,
-            PdfWriter writer, boolean oneSidedPrint) throws DocumentException, IOException {
+            PdfWriter writer, boolean oneSidedPrint, boolean documentInfo) throws DocumentException, IOException {
         _outputDevice.setRoot(_root);
 
         _outputDevice.start(_doc);
@@ -341,7 +402,9 @@ public class ITextRenderer {
         int pageCount = _root.getLayer().getPages().size();
         c.setPageCount(pageCount);
         firePreWrite(pageCount); // opportunity to adjust meta data
-        setDidValues(doc); // set PDF header fields from meta data
+        if (documentInfo) {
+            setDidValues(doc); // set PDF header fields from meta data
+        }
         for (int i = 0; i < pageCount; i++) {
             PageBox currentPage = (PageBox) pages.get(i);
             c.setPage(i, currentPage);
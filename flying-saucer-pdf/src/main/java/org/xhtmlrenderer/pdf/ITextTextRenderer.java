@@ -69,8 +69,7 @@ public class ITextTextRenderer implements TextRenderer {
     }
 
     public int getWidth(FontContext context, FSFont font, String string) {
-        BaseFont bf = ((ITextFSFont)font).getFontDescription().getFont();
-        float result = bf.getWidthPoint(string, font.getSize2D());
+        float result = getWidthPoint((ITextFSFont)font, string);
         if (result - Math.floor(result) < TEXT_MEASURING_DELTA) {
             return (int)result;
         } else {
@@ -78,6 +77,28 @@ public class ITextTextRenderer implements TextRenderer {
         }
     }
 
+    /**
+     * The width of <code>string</code>, shown with the font's fallbacks for
+     * the characters its primary font has no glyph for.
+     */
+    static float getWidthPoint(ITextFSFont font, String string) {
+        FontDescription primary = font.getFontDescription();
+        if (! font.hasFallbacks()) {
+            return primary.getFont().getWidthPoint(string, font.getSize2D());
+        }
+        float result = 0;
+        int len = string.length();
+        int start = 0;
+        while (start < len) {
+            FontDescription run = font.getFontDescription(string.codePointAt(start));
+            int end = font.getRunLimit(string, start, run);
+            result += run.getFont().getWidthPoint(
+                    start == 0 && end == len ? string : string.substring(start, end), font.getSize2D());
+            start = end;
+        }
+        return result;
+    }
+
     public void setFontScale(float scale) {
     }
 
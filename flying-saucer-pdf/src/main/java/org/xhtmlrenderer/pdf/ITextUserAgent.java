@@ -97,7 +97,13 @@ public class ITextUserAgent extends NaiveUserAgent {
             }
 
             if (resource != null) {
-                resource = new ImageResource(resource.getImageUri(), (FSImage) ((ITextFSImage) resource.getImage()).clone());
+                FSImage image = resource.getImage();
+                if (image instanceof PDFAsImage) {
+                    image = (FSImage) ((PDFAsImage) image).clone();
+                } else {
+                    image = (FSImage) ((ITextFSImage) image).clone();
+                }
+                resource = new ImageResource(resource.getImageUri(), image);
             } else {
                 resource = new ImageResource(uri, null);
             }
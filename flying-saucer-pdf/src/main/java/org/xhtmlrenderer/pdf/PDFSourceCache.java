@@ -0,0 +1,166 @@
+package org.xhtmlrenderer.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.util.Configuration;
+
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+
+/**
+ * Opens the PDFs used as images (see {@link PDFAsImage}) for reading
+ * without loading them completely. Local files are memory-mapped and only
+ * the cross-reference table and the objects of the imported pages are
+ * parsed, so a large letterhead costs little per document and its pages
+ * are shared through the operating system's file cache.
+ * <p>
+ * Other PDFs have to be downloaded. With the cache enabled, their content
+ * is kept across documents and renderers, up to
+ * <code>xr.pdf.source-cache.max-bytes</code> in total, least recently used
+ * first out; like cached stylesheets, a cached PDF isn't reloaded when the
+ * resource behind its URI changes. Only the bytes are shared: iText's
+ * readers and imported pages belong to one document, so each document still
+ * creates its own (cheap) reader.
+ * <p>
+ * Disabled by default, see {@link #setEnabled(boolean)} or the
+ * <code>xr.pdf.source-cache</code> configuration property. Thread-safe.
+ */
+public final class PDFSourceCache {
+    private static final long MAX_BYTES = Configuration.valueAsLong("xr.pdf.source-cache.max-bytes", 32L * 1024 * 1024);
+
+    private static boolean _enabled = Configuration.isTrue("xr.pdf.source-cache", false);
+
+    private static final LinkedHashMap<String, byte[]> _sources = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private static long _size;
+
+    private static long _hitCount;
+    private static long _missCount;
+
+    private PDFSourceCache() {
+    }
+
+    public static synchronized boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Enables or disables the cache. Disabling it drops all cached PDFs.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        _enabled = enabled;
+        if (! enabled) {
+            _sources.clear();
+            _size = 0;
+        }
+    }
+
+    /**
+     * Opens the PDF at <code>url</code> for partial reading. The reader must
+     * be closed once the document importing its pages has been closed.
+     */
+    static PdfReader createReader(URL url) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            File file;
+            try {
+                file = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                file = new File(url.getPath());
+            }
+            return new PdfReader(file.getPath(), null, true);
+        } else {
+            return new PdfReader(new RandomAccessFileOrArray(getSource(url)), null);
+        }
+    }
+
+    private static byte[] getSource(URL url) throws IOException {
+        String key = url.toExternalForm();
+        synchronized (PDFSourceCache.class) {
+            if (_enabled) {
+                byte[] result = _sources.get(key);
+                if (result != null) {
+                    _hitCount++;
+                    return result;
+                }
+                _missCount++;
+            }
+        }
+
+        byte[] result = read(url);
+
+        synchronized (PDFSourceCache.class) {
+            if (_enabled && result.length <= MAX_BYTES && ! _sources.containsKey(key)) {
+                _sources.put(key, result);
+                _size += result.length;
+                for (Iterator<byte[]> i = _sources.values().iterator(); _size > MAX_BYTES && i.hasNext(); ) {
+                    _size -= i.next().length;
+                    i.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[10240];
+            int i;
+            while ((i = is.read(buf)) != -1) {
+                out.write(buf, 0, i);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Drops all cached PDFs and resets the statistics.
+     */
+    public static synchronized void clear() {
+        _sources.clear();
+        _size = 0;
+        _hitCount = 0;
+        _missCount = 0;
+    }
+
+    /**
+     * The number of bytes currently cached.
+     */
+    public static synchronized long getSize() {
+        return _size;
+    }
+
+    /**
+     * The number of downloaded PDFs found in the cache.
+     */
+    public static synchronized long getHitCount() {
+        return _hitCount;
+    }
+
+    /**
+     * The number of PDFs that had to be downloaded while the cache was
+     * enabled.
+     */
+    public static synchronized long getMissCount() {
+        return _missCount;
+    }
+
+    /**
+     * The fraction of downloaded PDFs found in the cache, 0 if none were
+     * looked up.
+     */
+    public static synchronized float getHitRate() {
+        long total = _hitCount + _missCount;
+        return total == 0 ? 0 : (float) _hitCount / total;
+    }
+}
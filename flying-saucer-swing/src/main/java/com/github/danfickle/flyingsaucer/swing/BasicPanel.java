@@ -32,21 +32,30 @@ import java.awt.print.PrinterGraphics;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 
 import javax.swing.JOptionPane;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.layout.Layer;
 import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.newtable.TableBox;
+import org.xhtmlrenderer.newtable.TableRowBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
+import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
@@ -73,6 +82,9 @@ public abstract class BasicPanel extends RootPanel implements
 
     private boolean explicitlyOpaque;
 
+    private boolean tileCacheEnabled = Configuration.isTrue("xr.renderer.tile-cache", false);
+    private TileCache tileCache;
+
     private final MouseTracker mouseTracker;
     private boolean centeredPagedView;
     protected FormSubmissionListener formSubmissionListener;
@@ -133,7 +145,12 @@ public abstract class BasicPanel extends RootPanel implements
 
         // if this is the first time painting this document, then calc layout
         Layer root = getRootLayer();
-        if (root == null || isNeedRelayout()) {
+        if (isBackgroundLayout()) {
+            // paint the current layout, if any, until the new one is ready
+            if (isNeedRelayout() || (root == null && ! isDocumentLayoutPending())) {
+                startDocumentLayout(g.create());
+            }
+        } else if (root == null || isNeedRelayout()) {
             doDocumentLayout(g.create());
             root = getRootLayer();
         }
@@ -142,6 +159,7 @@ public abstract class BasicPanel extends RootPanel implements
             //Uu.p("dispatching an initial resize event");
             //queue.dispatchLayoutEvent(new ReflowEvent(ReflowEvent.CANVAS_RESIZED, this.getSize()));
             XRLog.render(Level.FINE, "skipping the actual painting");
+            paintDefaultBackground(g);
         } else {
             RenderingContext c = newRenderingContext((Graphics2D) g.create());
             long start = System.currentTimeMillis();
@@ -166,7 +184,11 @@ public abstract class BasicPanel extends RootPanel implements
 
             long start = System.currentTimeMillis();
             if (!c.isPrint()) {
-                root.paint(c);
+                if (isTileCacheEnabled() && ! root.containsFixedContent()) {
+                    paintTiled((Graphics2D) g, root);
+                } else {
+                    root.paint(c);
+                }
             } else {
                 paintPagedView(c, root);
             }
@@ -193,6 +215,60 @@ public abstract class BasicPanel extends RootPanel implements
         }
     }
 
+    private void paintTiled(Graphics2D g, final Layer root) {
+        if (tileCache == null) {
+            tileCache = new TileCache(
+                    Configuration.valueAsInt("xr.renderer.tile-cache.size", 32) * 1024 * 1024);
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+
+        final boolean opaque = explicitlyOpaque;
+        tileCache.paint(g, clip, root, opaque, new TileCache.TilePainter() {
+            public void paintTile(Graphics2D tg, Rectangle bounds) {
+                if (opaque) {
+                    tg.setColor(getBackground());
+                    tg.fill(bounds);
+                }
+                root.paint(newRenderingContext(tg));
+            }
+        });
+    }
+
+    /**
+     * Whether the painted document is cached in image tiles, so repainting
+     * unchanged areas (e.g. while scrolling) only copies images. Pages with
+     * fixed content and the print view are always painted directly. Defaults
+     * to the <code>xr.renderer.tile-cache</code> configuration property; the
+     * memory used is limited by <code>xr.renderer.tile-cache.size</code> (in
+     * megabytes).
+     */
+    public boolean isTileCacheEnabled() {
+        return tileCacheEnabled;
+    }
+
+    public void setTileCacheEnabled(boolean tileCacheEnabled) {
+        this.tileCacheEnabled = tileCacheEnabled;
+        if (! tileCacheEnabled) {
+            tileCache = null;
+        }
+        repaint();
+    }
+
+    protected void repaintContent(Rectangle area) {
+        if (tileCache != null) {
+            if (area == null) {
+                tileCache.invalidate();
+            } else {
+                tileCache.invalidate(area);
+            }
+        }
+        super.repaintContent(area);
+    }
+
     private void paintDefaultBackground(Graphics g) {
         if (!(g instanceof PrinterGraphics) && explicitlyOpaque) {
             g.setColor(getBackground());
@@ -445,6 +521,169 @@ public abstract class BasicPanel extends RootPanel implements
         setDocument(this.doc, getSharedContext().getBaseURL(), getSharedContext().getNamespaceHandler());
     }
 
+    /**
+     * Updates the rendering after attributes of <code>e</code> have been
+     * changed in the current document. The styles of <code>e</code> and its
+     * descendants are computed again and the boxes inside the block of
+     * <code>e</code> (or the block containing it) are rebuilt. The rest of
+     * the document keeps its styles and boxes, which is much cheaper than
+     * calling {@link #setDocument(Document, String)} again. A background
+     * layout in progress is stopped first, see
+     * {@link #startDocumentLayout(java.awt.Graphics)}. Must be called on the
+     * event dispatch thread, in the same event as the change.
+     */
+    public void elementAttributesChanged(Element e) {
+        stopDocumentLayout();
+        SharedContext c = getSharedContext();
+        c.invalidateStyles(e);
+        c.getReplacedElementFactory().remove(e);
+
+        if (c.getCss().isSiblingDependent()) {
+            // sibling selectors may depend on the changed attributes
+            for (Element sibling = e.nextElementSibling(); sibling != null; sibling = sibling.nextElementSibling()) {
+                c.invalidateStyles(sibling);
+            }
+            documentChanged(e.parent(), null);
+        } else {
+            documentChanged(e, e);
+        }
+    }
+
+    /**
+     * Updates the rendering after the text content of <code>e</code> (its
+     * child text nodes) has been changed in the current document. Only the
+     * boxes inside the block containing the text are rebuilt. Must be called
+     * on the event dispatch thread.
+     *
+     * @see #elementAttributesChanged(Element)
+     */
+    public void elementTextChanged(Element e) {
+        stopDocumentLayout();
+        documentChanged(e, null);
+    }
+
+    /**
+     * Updates the rendering after child nodes of <code>e</code> have been
+     * added, removed or reordered in the current document. The styles of the
+     * descendants of <code>e</code> are computed again and the boxes inside
+     * the block containing them are rebuilt. Must be called on the event
+     * dispatch thread.
+     *
+     * @see #elementAttributesChanged(Element)
+     */
+    public void elementChildrenChanged(Element e) {
+        stopDocumentLayout();
+        SharedContext c = getSharedContext();
+        // :first-child and the like may match differently now
+        for (Element child : e.children()) {
+            c.invalidateStyles(child);
+        }
+        ReplacedElementFactory factory = c.getReplacedElementFactory();
+        factory.remove(e);
+        if (factory instanceof SwingReplacedElementFactory) {
+            // the images and form fields of removed children
+            ((SwingReplacedElementFactory) factory).removeDetached();
+        }
+
+        documentChanged(e, null);
+    }
+
+    /**
+     * Marks the children of the innermost block containing (or generated by)
+     * <code>container</code> for rebuilding and schedules a relayout. If that
+     * block belongs to <code>restyled</code> it takes the element's new style
+     * first, provided it still generates the same kind of box.
+     */
+    private void documentChanged(Element container, Element restyled) {
+        if (doc == null) {
+            return;
+        }
+
+        // A background layout builds a new box tree after document changes
+        Box root = getRootBox();
+        if (root != null && ! isBackgroundLayout()) {
+            BlockBox block = null;
+            if (! getSharedContext().isCounterFunctionsUsed()) {
+                Set<Element> ancestors = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+                for (Element a = container; a != null; a = a.parent()) {
+                    ancestors.add(a);
+                }
+                if (ancestors.contains(root.getElement())) {
+                    block = findRebuildableBlock(root, ancestors);
+                }
+            }
+
+            if (block != null && restyled != null && block.getElement() == restyled) {
+                CalculatedStyle style = getSharedContext().getStyle(restyled);
+                if (! isSameBoxType(block.getStyle(), style)) {
+                    documentChanged(restyled.parent(), null);
+                    return;
+                }
+
+                block.setStyle(style);
+                block.setFirstLineStyle(style.mayHaveFirstLine() ?
+                        getSharedContext().getCss().getPseudoElementStyle(restyled, "first-line") : null);
+                block.setFirstLetterStyle(style.mayHaveFirstLetter() ?
+                        getSharedContext().getCss().getPseudoElementStyle(restyled, "first-letter") : null);
+            }
+
+            if (block != null) {
+                block.invalidateChildren();
+                setNeedRelayout(true);
+                repaint();
+                return;
+            }
+
+            // Build the box tree again (still using the cached styles)
+            setRootBox(null);
+        }
+
+        relayout();
+    }
+
+    /**
+     * Returns the innermost block in <code>box</code> whose element is one of
+     * <code>ancestors</code> and whose children can be created again on their
+     * own (not a table structure box, anonymous or replaced).
+     */
+    private static BlockBox findRebuildableBlock(Box box, Set<Element> ancestors) {
+        List<?> children;
+        if (box instanceof BlockBox && ((BlockBox) box).getChildrenContentType() == BlockBox.CONTENT_INLINE) {
+            children = ((BlockBox) box).getInlineContent();
+        } else {
+            children = box.getChildren();
+        }
+
+        if (children != null) {
+            for (Object child : children) {
+                if (child instanceof Box && ancestors.contains(((Box) child).getElement())) {
+                    BlockBox result = findRebuildableBlock((Box) child, ancestors);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+        }
+
+        if (box instanceof BlockBox && ! box.isAnonymous() && ! ((BlockBox) box).isReplaced() &&
+                ! (box instanceof TableBox || box instanceof TableSectionBox || box instanceof TableRowBox)) {
+            return (BlockBox) box;
+        }
+        return null;
+    }
+
+    /**
+     * Whether an element with style <code>s2</code> gets the same kind of box
+     * (and table cell) as with style <code>s1</code>.
+     */
+    private static boolean isSameBoxType(CalculatedStyle s1, CalculatedStyle s2) {
+        return s1.getIdent(CSSName.DISPLAY) == s2.getIdent(CSSName.DISPLAY) &&
+                s1.getIdent(CSSName.FLOAT) == s2.getIdent(CSSName.FLOAT) &&
+                s1.getIdent(CSSName.POSITION) == s2.getIdent(CSSName.POSITION) &&
+                s1.getColSpan() == s2.getColSpan() &&
+                s1.getRowSpan() == s2.getRowSpan();
+    }
+
     public URL getURL() {
         URL base = null;
         try {
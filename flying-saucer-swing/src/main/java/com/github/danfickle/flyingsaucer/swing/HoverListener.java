@@ -107,11 +107,7 @@ public class HoverListener extends DefaultFSMouseListener {
         }
 
         if (needRepaint) {
-            if (targetedRepaint) {
-                panel.repaint(repaintRegion);
-            } else {
-                panel.repaint();
-            }
+            panel.repaintContent(targetedRepaint ? repaintRegion : null);
         }
     }
     
@@ -0,0 +1,201 @@
+package com.github.danfickle.flyingsaucer.swing;
+
+import java.awt.EventQueue;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * Merges the relayout and repaint requests a {@link RootPanel} receives
+ * (mostly from images that finish loading in the background) into passes
+ * that run on the event dispatch thread, at most one every
+ * {@link #getInterval()} milliseconds. Requests that arrive while a pass is
+ * pending are folded into it: a relayout supersedes any repaint, and repaints
+ * of single replaced elements only repaint the area they occupy. Requests to
+ * reorder the loading of background images (sent on every scroll step) are
+ * merged the same way. All panels share one timer thread.
+ */
+public final class RepaintScheduler {
+    private static ScheduledExecutorService _timer;
+
+    private final RootPanel _panel;
+    private final long _interval;
+
+    // All guarded by this
+    private boolean _scheduled;
+    private long _lastPassAt;
+    private boolean _layout;
+    private boolean _repaintAll;
+    private boolean _prioritize;
+    private Set<ReplacedElement> _elements = newElementSet();
+
+    private long _requestCount;
+    private long _coalescedCount;
+    private long _executedCount;
+
+    RepaintScheduler(RootPanel panel, long interval) {
+        _panel = panel;
+        _interval = interval;
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (_timer == null) {
+            _timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Flying Saucer repaint");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return _timer;
+    }
+
+    private static Set<ReplacedElement> newElementSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<ReplacedElement, Boolean>());
+    }
+
+    /**
+     * Requests a relayout (and full repaint) of the panel.
+     */
+    public synchronized void requestLayout() {
+        _layout = true;
+        schedule();
+    }
+
+    /**
+     * Requests a full repaint of the panel.
+     */
+    public synchronized void requestRepaint() {
+        _repaintAll = true;
+        schedule();
+    }
+
+    /**
+     * Requests a repaint of the area occupied by <code>element</code>.
+     */
+    public synchronized void requestRepaint(ReplacedElement element) {
+        _elements.add(element);
+        schedule();
+    }
+
+    /**
+     * Requests that the panel's images still loading in the background are
+     * reordered by their distance from the visible area, see
+     * {@link RootPanel#prioritizeImageLoading()}.
+     */
+    public synchronized void requestImagePriorities() {
+        _prioritize = true;
+        schedule();
+    }
+
+    /**
+     * Discards all pending requests, e.g. because a new document has been
+     * set.
+     */
+    public synchronized void cancel() {
+        _layout = false;
+        _repaintAll = false;
+        _prioritize = false;
+        _elements.clear();
+    }
+
+    private void schedule() {
+        _requestCount++;
+        if (_scheduled) {
+            _coalescedCount++;
+            return;
+        }
+        _scheduled = true;
+
+        final Runnable pass = new Runnable() {
+            public void run() {
+                runPass();
+            }
+        };
+
+        long delay = _lastPassAt + _interval - System.currentTimeMillis();
+        if (delay <= 0) {
+            EventQueue.invokeLater(pass);
+        } else {
+            getTimer().schedule(new Runnable() {
+                public void run() {
+                    EventQueue.invokeLater(pass);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runPass() {
+        boolean layout;
+        boolean repaintAll;
+        boolean prioritize;
+        Set<ReplacedElement> elements;
+        synchronized (this) {
+            _scheduled = false;
+            layout = _layout;
+            repaintAll = _repaintAll;
+            prioritize = _prioritize;
+            elements = _elements;
+            if (! layout && ! repaintAll && ! prioritize && elements.isEmpty()) {
+                // cancelled
+                return;
+            }
+
+            _layout = false;
+            _repaintAll = false;
+            _prioritize = false;
+            _elements = newElementSet();
+            _lastPassAt = System.currentTimeMillis();
+            _executedCount++;
+        }
+
+        XRLog.general(Level.FINE, "Running repaint pass, layout: " + layout + ", elements: " + elements.size());
+        if (layout) {
+            _panel.relayout();
+        } else if (repaintAll) {
+            _panel.repaintContent(null);
+        } else if (! elements.isEmpty()) {
+            _panel.repaintElements(elements);
+        }
+        if (prioritize) {
+            _panel.prioritizeImageLoading();
+        }
+    }
+
+    /**
+     * The minimum time between two passes in milliseconds.
+     */
+    public long getInterval() {
+        return _interval;
+    }
+
+    /**
+     * The number of requests received so far.
+     */
+    public synchronized long getRequestCount() {
+        return _requestCount;
+    }
+
+    /**
+     * The number of requests that were merged into an already pending pass.
+     */
+    public synchronized long getCoalescedCount() {
+        return _coalescedCount;
+    }
+
+    /**
+     * The number of passes run.
+     */
+    public synchronized long getExecutedCount() {
+        return _executedCount;
+    }
+}
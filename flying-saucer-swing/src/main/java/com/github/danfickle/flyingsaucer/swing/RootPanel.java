@@ -20,6 +20,7 @@
 package com.github.danfickle.flyingsaucer.swing;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.EventQueue;
@@ -30,15 +31,28 @@ import java.awt.Rectangle;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 import javax.swing.CellRendererPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -55,6 +69,8 @@ import org.xhtmlrenderer.css.style.derived.StringValue;
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.Layer;
@@ -62,19 +78,24 @@ import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.swing.ContentStore;
+import org.xhtmlrenderer.swing.DeferredImageReplacedElement;
+import org.xhtmlrenderer.swing.ImageResourceLoader;
 import org.xhtmlrenderer.swing.Java2DFontContext;
 import org.xhtmlrenderer.swing.Java2DOutputDevice;
+import org.xhtmlrenderer.swing.ElementRepaintListener;
 import org.xhtmlrenderer.swing.RepaintListener;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.Uu;
 import org.xhtmlrenderer.util.XRLog;
 
 public class RootPanel extends JPanel implements ComponentListener,
-			UserInterface, FSCanvas, RepaintListener 
+			UserInterface, FSCanvas, ElementRepaintListener 
 {
     static final long serialVersionUID = 1L;
 
@@ -85,6 +106,17 @@ public class RootPanel extends JPanel implements ComponentListener,
 
     private boolean defaultFontFromComponent;
 
+    private boolean backgroundLayout = Configuration.isTrue("xr.layout.background", false);
+    private boolean incrementalRelayout = Configuration.isTrue("xr.layout.incremental-resize", true);
+    // set when something other than the viewport size has changed
+    private boolean fullRelayoutNeeded = false;
+    private ExecutorService layoutExecutor;
+    // only changed on the event dispatch thread
+    private volatile BackgroundLayout pendingLayout;
+
+    // boxes of images still loading in the background, see prioritizeImageLoading()
+    private List<BlockBox> pendingImageBoxes = new ArrayList<BlockBox>();
+
     public RootPanel() { }
 
     public SharedContext getSharedContext() {
@@ -102,11 +134,21 @@ public class RootPanel extends JPanel implements ComponentListener,
     public void setDocument(Document doc, String url, NamespaceHandler nsh) {
 		fireDocumentStarted();
 		resetScrollPosition();
+        // a layout in place may still be using the styles reset below
+        stopDocumentLayout();
+        repaintScheduler.cancel();
+        ImageResourceLoader imageLoader = getImageResourceLoader();
+        if (imageLoader != null) {
+            imageLoader.stopLoading();
+        }
+        pendingImageBoxes = new ArrayList<BlockBox>();
         setRootBox(null);
+        // the form controls of the previous document
+        this.removeAll();
         this.doc = doc;
 
         //have to do this first
-        if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+        if (getSharedContext().getRendererSettings().isCacheStylesheets()) {
             getSharedContext().getCss().flushStyleSheets();
         } else {
             getSharedContext().getCss().flushAllStyleSheets();
@@ -164,6 +206,7 @@ public class RootPanel extends JPanel implements ComponentListener,
         // if a scrollpane is already installed we remove it.
         if (enclosingScrollPane != null) {
             enclosingScrollPane.removeComponentListener(this);
+            enclosingScrollPane.getViewport().removeChangeListener(viewportListener);
         }
 
         enclosingScrollPane = scrollPane;
@@ -171,12 +214,20 @@ public class RootPanel extends JPanel implements ComponentListener,
         if (enclosingScrollPane != null) {
             Uu.p("added root panel as a component listener to the scroll pane");
             enclosingScrollPane.addComponentListener(this);
+            enclosingScrollPane.getViewport().addChangeListener(viewportListener);
             default_scroll_mode = enclosingScrollPane.getViewport().getScrollMode();
         }
     }
 
     private int default_scroll_mode = -1;
 
+    private final ChangeListener viewportListener = new ChangeListener() {
+        public void stateChanged(ChangeEvent e) {
+            // sent for every scroll step, see RepaintScheduler
+            repaintScheduler.requestImagePriorities();
+        }
+    };
+
     /**
      * Gets the fixedRectangle attribute of the BasicPanel object
      *
@@ -214,6 +265,8 @@ public class RootPanel extends JPanel implements ComponentListener,
     public void removeNotify() {
         super.removeNotify();
         setEnclosingScrollPane(null);
+        cancelDocumentLayout();
+        shutdownLayoutExecutor();
     }
 
     protected Document doc = null;
@@ -318,100 +371,501 @@ public class RootPanel extends JPanel implements ComponentListener,
 
             BlockBox root = (BlockBox)getRootBox();
             if (root != null && isNeedRelayout()) {
+                c.setIncrementalRelayout(isIncrementalRelayout() && ! fullRelayoutNeeded);
                 root.reset(c);
             } else {
                 root = BoxBuilder.createRootBox(c, doc);
                 setRootBox(root);
             }
 
-            initFontFromComponent(root);
-
-            root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
-
-            root.layout(c);
+            Dimension intrinsic_size = layoutRoot(c, root, getInitialExtents(c));
+            fullRelayoutNeeded = false;
 
             long end = System.currentTimeMillis();
 
             XRLog.layout(Level.INFO, "Layout took " + (end - start) + "ms");
 
-            /*
-            System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
-            */
+            documentLaidOut(c, root, intrinsic_size);
+        } catch (ThreadDeath t) {
+            throw t;
+        } catch (Throwable t) {
+            handleLayoutException(t);
+        }
+    }
+
+    /**
+     * Lays out <code>root</code> in a viewport of the given extents and
+     * returns the size of the result. Doesn't touch any Swing state so it may
+     * run on a background thread.
+     */
+    private Dimension layoutRoot(LayoutContext c, BlockBox root, Rectangle extents) {
+        initFontFromComponent(root);
+
+        root.setContainingBlock(new ViewportBox(extents));
+
+        root.layout(c);
+
+        /*
+        System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
+        */
+
+        XRLog.layout(Level.FINEST, "after layout: " + root);
+
+        Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+
+        if (c.isPrint()) {
+            root.getLayer().trimEmptyPages(c, intrinsic_size.height);
+            root.getLayer().layoutPages(c);
+        }
+
+        return intrinsic_size;
+    }
 
+    /**
+     * Updates the panel (size, scrolling, listeners) for a newly laid out
+     * document. Must be called on the event dispatch thread.
+     */
+    private void documentLaidOut(LayoutContext c, BlockBox root, Dimension intrinsic_size) {
     // if there is a fixed child then we need to set opaque to false
     // so that the entire viewport will be repainted. this is slower
     // but that's the hit you get from using fixed layout
+        if (root.getLayer().containsFixedContent()) {
+            super.setOpaque(false);
+        } else {
+            super.setOpaque(true);
+        }
+
+        setPreferredSize(intrinsic_size);
+        revalidate();
+
+        // if doc is shorter than viewport
+        // then stretch canvas to fill viewport exactly
+        // then adjust the body element accordingly
+        if (enclosingScrollPane != null) {
+            if (intrinsic_size.height < enclosingScrollPane.getViewport().getHeight()) {
+                //Uu.p("int height is less than viewport height");
+                // XXX Not threadsafe
+                if (enclosingScrollPane.getViewport().getHeight() != this.getHeight()) {
+                    this.setPreferredSize(new Dimension(
+                            intrinsic_size.width, enclosingScrollPane.getViewport().getHeight()));
+                    this.revalidate();
+                }
+                //Uu.p("need to do the body hack");
+                if (root != null && ! c.isPrint()) {
+                    intrinsic_size.height = root.getHeight();
+                }
+            }
+
+            // turn on simple scrolling mode if there's any fixed elements
             if (root.getLayer().containsFixedContent()) {
-                super.setOpaque(false);
+                // Uu.p("is fixed");
+                enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
             } else {
-                super.setOpaque(true);
+                // Uu.p("is not fixed");
+                enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
             }
+        }
+
+        pendingImageBoxes = findPendingImages(root);
+        prioritizeImageLoading();
 
-            XRLog.layout(Level.FINEST, "after layout: " + root);
+        this.fireDocumentLoaded();
+        /* FIXME
+        if (Configuration.isTrue("xr.image.background.greedy", false)) {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    XRLog.load("loading images in document and css greedily");
+                    requestBGImages(getRootBox());
+                }
+            });
+        }*/
+    }
 
-            Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+    private ImageResourceLoader getImageResourceLoader() {
+        ReplacedElementFactory factory = getSharedContext().getReplacedElementFactory();
+        if (factory instanceof SwingReplacedElementFactory) {
+            return ((SwingReplacedElementFactory) factory).getImageResourceLoader();
+        } else {
+            return null;
+        }
+    }
 
-            if (c.isPrint()) {
-                root.getLayer().trimEmptyPages(c, intrinsic_size.height);
-                root.getLayer().layoutPages(c);
+    private static List<BlockBox> findPendingImages(Box root) {
+        List<BlockBox> result = new ArrayList<BlockBox>();
+        for (BlockBox box : findReplacedBoxes(root, new ArrayList<BlockBox>())) {
+            ReplacedElement replaced = box.getReplacedElement();
+            if (replaced instanceof DeferredImageReplacedElement &&
+                    ! ((DeferredImageReplacedElement) replaced).getImageResource().isLoaded()) {
+                result.add(box);
             }
+        }
+        return result;
+    }
 
-            setPreferredSize(intrinsic_size);
-            revalidate();
+    /**
+     * Has the images still loading in the background loaded in order of
+     * their distance from the visible part of the document. Called after
+     * each layout and, through the {@link RepaintScheduler}, when the
+     * enclosing scroll pane scrolls.
+     */
+    protected void prioritizeImageLoading() {
+        ImageResourceLoader imageLoader = getImageResourceLoader();
+        LayoutContext c = getLayoutContext();
+        if (imageLoader == null || c == null || pendingImageBoxes.isEmpty()) {
+            return;
+        }
 
-            // if doc is shorter than viewport
-            // then stretch canvas to fill viewport exactly
-            // then adjust the body element accordingly
-            if (enclosingScrollPane != null) {
-                if (intrinsic_size.height < enclosingScrollPane.getViewport().getHeight()) {
-                    //Uu.p("int height is less than viewport height");
-                    // XXX Not threadsafe
-                    if (enclosingScrollPane.getViewport().getHeight() != this.getHeight()) {
-                        this.setPreferredSize(new Dimension(
-                                intrinsic_size.width, enclosingScrollPane.getViewport().getHeight()));
-                        this.revalidate();
-                    }
-                    //Uu.p("need to do the body hack");
-                    if (root != null && ! c.isPrint()) {
-                        intrinsic_size.height = root.getHeight();
-                    }
+        Rectangle visible = getVisibleRect();
+        if (enclosingScrollPane == null) {
+            Insets insets = getInsets();
+            visible.translate(-insets.left, -insets.top);
+        }
+
+        Map<String, Integer> priorities = new HashMap<String, Integer>();
+        for (Iterator<BlockBox> i = pendingImageBoxes.iterator(); i.hasNext(); ) {
+            BlockBox box = i.next();
+            ReplacedElement replaced = box.getReplacedElement();
+            if (! (replaced instanceof DeferredImageReplacedElement)) {
+                i.remove();
+                continue;
+            }
+            ImageResource resource = ((DeferredImageReplacedElement) replaced).getImageResource();
+            if (resource.isLoaded()) {
+                i.remove();
+                continue;
+            }
+
+            Rectangle bounds = box.getPaintingBorderEdge(c);
+            int dx = Math.max(0, Math.max(visible.x - bounds.x - bounds.width, bounds.x - visible.x - visible.width));
+            int dy = Math.max(0, Math.max(visible.y - bounds.y - bounds.height, bounds.y - visible.y - visible.height));
+            Integer distance = Integer.valueOf(dx + dy);
+
+            Integer previous = priorities.get(resource.getImageUri());
+            if (previous == null || distance.intValue() < previous.intValue()) {
+                priorities.put(resource.getImageUri(), distance);
+            }
+        }
+        imageLoader.prioritize(priorities);
+    }
+
+    private void handleLayoutException(Throwable t) {
+        if (documentListeners.size() > 0) {
+            fireOnLayoutException(t);
+        } else {
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            }
+
+            // "Shouldn't" happen
+            XRLog.exception(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Whether a relayout caused only by a change of the viewport size keeps
+     * the parts of the previous layout that don't depend on the viewport
+     * width: blocks whose width hasn't changed keep the layout of their
+     * children and are only moved, and min/max widths of content without
+     * percentages are kept. Background layouts then lay the current box tree
+     * out again rather than building a new one. Defaults to the
+     * <code>xr.layout.incremental-resize</code> configuration property
+     * (true).
+     */
+    public boolean isIncrementalRelayout() {
+        return incrementalRelayout;
+    }
+
+    public void setIncrementalRelayout(boolean incrementalRelayout) {
+        this.incrementalRelayout = incrementalRelayout;
+    }
+
+    /**
+     * Whether {@link BasicPanel} lays documents out on a background thread
+     * (see {@link #startDocumentLayout(Graphics)}) rather than while painting.
+     * Defaults to the <code>xr.layout.background</code> configuration
+     * property.
+     */
+    public boolean isBackgroundLayout() {
+        return backgroundLayout;
+    }
+
+    public void setBackgroundLayout(boolean backgroundLayout) {
+        this.backgroundLayout = backgroundLayout;
+    }
+
+    /**
+     * Starts laying out the document on the layout thread. The current box
+     * tree, if any, stays in place (and keeps being painted, along with its
+     * form controls) until the new one is complete, at which point the two
+     * are swapped and the panel is repainted. A background layout that is
+     * still queued or running is superseded and its result is discarded.
+     * Must be called on the event dispatch thread.
+     * <p>
+     * If only the viewport size has changed and
+     * {@link #isIncrementalRelayout()} is on, the current box tree is laid
+     * out again in place instead, and the panel shows just its background
+     * until that is done. Such a layout isn't stopped halfway when it is
+     * superseded: the next one takes the box tree over once it has finished.
+     * <p>
+     * The layout reads the live document. Changes to the document must
+     * therefore be reported (see
+     * {@link BasicPanel#elementAttributesChanged(Element)} and the like) in
+     * the same event as they are made: reporting a change stops the running
+     * layout, which may have seen the document half-changed, before styles
+     * are invalidated and a new layout is started.
+     */
+    public void startDocumentLayout(Graphics g) {
+        BackgroundLayout previous = pendingLayout;
+        cancelDocumentLayout();
+        if (g == null || doc == null) {
+            return;
+        }
+
+        BoxTree tree = null;
+        if (isIncrementalRelayout() && ! fullRelayoutNeeded) {
+            if (previous != null) {
+                tree = previous.tree;
+            } else if (getRootBox() != null) {
+                // the layout thread owns the box tree until the layout completes
+                tree = new BoxTree((BlockBox) getRootBox());
+                setRootBox(null);
+                pendingImageBoxes = new ArrayList<BlockBox>();
+            }
+        }
+
+        LayoutContext c = newLayoutContext((Graphics2D) g);
+        BackgroundLayout layout = new BackgroundLayout(c, doc, getInitialExtents(c), tree);
+        pendingLayout = layout;
+        layout.future = getLayoutExecutor().submit(layout);
+    }
+
+    /**
+     * Stops and discards the background layout in progress, if any. Must be
+     * called on the event dispatch thread.
+     */
+    public void cancelDocumentLayout() {
+        if (pendingLayout != null) {
+            pendingLayout.future.cancel(false);
+            if (pendingLayout.tree == null) {
+                // a layout in place runs to the end, so the box tree stays
+                // consistent for the next one
+                pendingLayout.context.cancel();
+            }
+            pendingLayout = null;
+        }
+    }
+
+    /**
+     * Stops the background layout in progress, if any, and waits until the
+     * layout thread is idle, so it no longer reads the document or caches
+     * styles. Used before the document's changes are applied to the
+     * styles and boxes. A box tree being laid out in place is taken back.
+     * Must be called on the event dispatch thread.
+     */
+    void stopDocumentLayout() {
+        BackgroundLayout layout = pendingLayout;
+        if (layout != null) {
+            cancelDocumentLayout();
+            // superseded layouts in place may still be running as well
+            awaitLayoutThread();
+            if (layout.tree != null && getRootBox() == null) {
+                setRootBox(layout.tree.root);
+            }
+        }
+    }
+
+    /**
+     * Waits until the layout thread has run or skipped all the layouts
+     * submitted to it so far.
+     */
+    private void awaitLayoutThread() {
+        Future<?> idle = getLayoutExecutor().submit(new Runnable() {
+            public void run() {
+            }
+        });
+        boolean interrupted = false;
+        while (true) {
+            try {
+                idle.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether a background layout has been started and not yet completed or
+     * been cancelled.
+     */
+    public boolean isDocumentLayoutPending() {
+        return pendingLayout != null;
+    }
+
+    private synchronized ExecutorService getLayoutExecutor() {
+        if (layoutExecutor == null) {
+            layoutExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Flying Saucer layout");
+                    t.setDaemon(true);
+                    return t;
                 }
+            });
+        }
+        return layoutExecutor;
+    }
+
+    private synchronized void shutdownLayoutExecutor() {
+        if (layoutExecutor != null) {
+            layoutExecutor.shutdown();
+            layoutExecutor = null;
+        }
+    }
+
+    private void layoutCompleted(BackgroundLayout layout, BlockBox root, Dimension intrinsic_size) {
+        if (pendingLayout != layout) {
+            // superseded
+            return;
+        }
+        pendingLayout = null;
+        if (layout.tree == null) {
+            fullRelayoutNeeded = false;
+        }
+
+        synchronized (this) {
+            this.layoutContext = layout.context;
+        }
+        // swap the form controls along with the box tree
+        this.removeAll();
+        synchronized (layout.components) {
+            for (Component comp : layout.components) {
+                add(comp);
+            }
+        }
+        setRootBox(root);
+        setNeedRelayout(false);
+
+        documentLaidOut(layout.context, root, intrinsic_size);
+
+        repaint();
+    }
+
+    private void layoutFailed(BackgroundLayout layout, Throwable t) {
+        if (pendingLayout != layout) {
+            return;
+        }
+        pendingLayout = null;
+
+        handleLayoutException(t);
+    }
 
-                // turn on simple scrolling mode if there's any fixed elements
-                if (root.getLayer().containsFixedContent()) {
-                    // Uu.p("is fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
+    /**
+     * Adds a form control created during layout to the panel. Controls
+     * created by a background layout are kept with it and added when its
+     * box tree replaces the current one, unless the layout has been
+     * superseded in the meantime.
+     */
+    void addLayoutComponent(LayoutContext c, Component comp) {
+        if (EventQueue.isDispatchThread()) {
+            add(comp);
+        } else {
+            BackgroundLayout layout = pendingLayout;
+            if (layout != null && layout.context == c) {
+                layout.components.add(comp);
+            }
+        }
+    }
+
+    /**
+     * Removes a form control whose box is laid out again. Outside the event
+     * dispatch thread this is left to the background layout, which replaces
+     * all the controls of the panel when it completes.
+     */
+    void removeLayoutComponent(LayoutContext c, Component comp) {
+        if (EventQueue.isDispatchThread()) {
+            remove(comp);
+        }
+    }
+
+    /**
+     * A box tree laid out again in place by background layouts, handed on
+     * from a layout to the one superseding it. Only used on the layout
+     * thread while a layout is pending.
+     */
+    private static final class BoxTree {
+        // null if a layout has failed halfway through it
+        private BlockBox root;
+
+        BoxTree(BlockBox root) {
+            this.root = root;
+        }
+    }
+
+    /**
+     * A layout of the document as it was when the layout was started, run on
+     * the layout thread.
+     */
+    private final class BackgroundLayout implements Runnable {
+        private final LayoutContext context;
+        private final Document document;
+        private final Rectangle extents;
+        // the box tree to lay out again in place, null to build a new one
+        private final BoxTree tree;
+        private final List<Component> components = Collections.synchronizedList(new ArrayList<Component>());
+        private Future<?> future;
+
+        BackgroundLayout(LayoutContext context, Document document, Rectangle extents, BoxTree tree) {
+            this.context = context;
+            this.document = document;
+            this.extents = extents;
+            this.tree = tree;
+        }
+
+        public void run() {
+            try {
+                long start = System.currentTimeMillis();
+
+                final BlockBox root;
+                if (tree != null && tree.root != null) {
+                    root = tree.root;
+                    tree.root = null;
+                    context.setIncrementalRelayout(true);
+                    root.reset(context);
                 } else {
-                    // Uu.p("is not fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
+                    root = BoxBuilder.createRootBox(context, document);
+                }
+                final Dimension intrinsic_size = layoutRoot(context, root, extents);
+                if (tree != null) {
+                    tree.root = root;
                 }
-            }
 
-            this.fireDocumentLoaded();
-            /* FIXME
-            if (Configuration.isTrue("xr.image.background.greedy", false)) {
+                long end = System.currentTimeMillis();
+
+                XRLog.layout(Level.INFO, "Background layout took " + (end - start) + "ms");
+
                 EventQueue.invokeLater(new Runnable() {
                     public void run() {
-                        XRLog.load("loading images in document and css greedily");
-                        requestBGImages(getRootBox());
+                        layoutCompleted(BackgroundLayout.this, root, intrinsic_size);
+                    }
+                });
+            } catch (CancellationException e) {
+                XRLog.layout(Level.FINE, "Background layout cancelled");
+            } catch (ThreadDeath t) {
+                throw t;
+            } catch (final Throwable t) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        layoutFailed(BackgroundLayout.this, t);
                     }
                 });
-            }*/
-        } catch (ThreadDeath t) {
-            throw t;
-        } catch (Throwable t) {
-            if (documentListeners.size() > 0) {
-                fireOnLayoutException(t);
-            } else {
-                if (t instanceof Error) {
-                    throw (Error)t;
-                }
-                if (t instanceof RuntimeException) {
-                    throw (RuntimeException)t;
-                }
-
-                // "Shouldn't" happen
-                XRLog.exception(t.getMessage(), t);
             }
         }
     }
@@ -541,11 +995,23 @@ public class RootPanel extends JPanel implements ComponentListener,
         Uu.p("componentResized() " + this.getSize());
         Uu.p("viewport = " + enclosingScrollPane.getViewport().getSize());
         if (! getSharedContext().isPrint() && isExtentsHaveChanged()) {
-            relayout();
+            relayoutForResize();
         }
     }
 
     protected void relayout() {
+        if (doc != null) {
+            fullRelayoutNeeded = true;
+            setNeedRelayout(true);
+            repaint();
+        }
+    }
+
+    /**
+     * Like {@link #relayout()}, but only the size of the viewport has
+     * changed.
+     */
+    protected void relayoutForResize() {
         if (doc != null) {
             setNeedRelayout(true);
             repaint();
@@ -600,7 +1066,9 @@ public class RootPanel extends JPanel implements ComponentListener,
     }
 
     protected boolean isExtentsHaveChanged() {
-        if (rootBox == null) {
+        if (pendingLayout != null) {
+            return ! pendingLayout.extents.equals(getScreenExtents());
+        } else if (rootBox == null) {
             return true;
         } else {
             Rectangle oldExtents = ((ViewportBox)rootBox.getContainingBlock()).getExtents();
@@ -621,51 +1089,105 @@ public class RootPanel extends JPanel implements ComponentListener,
     }
 
     // On-demand repaint requests for async image loading
-    private long lastRepaintRunAt = System.currentTimeMillis();
-    private final long maxRepaintRequestWaitMs = 50;
-    private boolean repaintRequestPending = false;
-    private long pendingRepaintCount = 0;
-
-    public void repaintRequested(final boolean doLayout) {
-        final long now = System.currentTimeMillis();
-        final long el = now - lastRepaintRunAt;
-        if (!doLayout || el > maxRepaintRequestWaitMs || pendingRepaintCount > 5) {
-            XRLog.general(Level.FINE, "*** Repainting panel, by request, el: " + el + " pending " + pendingRepaintCount);
-            if (doLayout) {
-                relayout();
-            } else {
-                repaint();
+    private final RepaintScheduler repaintScheduler = new RepaintScheduler(this, 50);
+
+    /**
+     * The scheduler that merges the repaint and relayout requests this panel
+     * receives as a {@link RepaintListener}.
+     */
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
+
+    public void repaintRequested(boolean doLayout) {
+        if (doLayout) {
+            repaintScheduler.requestLayout();
+        } else {
+            repaintScheduler.requestRepaint();
+        }
+    }
+
+    public void repaintRequested(ReplacedElement element) {
+        repaintScheduler.requestRepaint(element);
+    }
+
+    /**
+     * Repaints the areas of the boxes showing <code>elements</code>.
+     */
+    void repaintElements(Set<ReplacedElement> elements) {
+        Box root = getRootBox();
+        LayoutContext c = getLayoutContext();
+        if (root == null || c == null || isPrintView()) {
+            repaintContent(null);
+            return;
+        }
+
+        Rectangle dirty = null;
+        Set<ReplacedElement> found = Collections.newSetFromMap(new IdentityHashMap<ReplacedElement, Boolean>());
+        for (BlockBox box : findReplacedBoxes(root, new ArrayList<BlockBox>())) {
+            ReplacedElement replaced = box.getReplacedElement();
+            if (elements.contains(replaced)) {
+                found.add(replaced);
+                Rectangle bounds = box.getPaintingBorderEdge(c);
+                if (dirty == null) {
+                    dirty = bounds;
+                } else {
+                    dirty.add(bounds);
+                }
             }
-            lastRepaintRunAt = System.currentTimeMillis();
-            repaintRequestPending = false;
-            pendingRepaintCount = 0;
+        }
+
+        if (found.size() < elements.size()) {
+            // not (or no longer) shown by a box we know of, e.g. created by a
+            // layout in progress
+            repaintContent(null);
         } else {
-            if (!repaintRequestPending) {
-                XRLog.general(Level.FINE, "... Queueing new repaint request, el: " + el + " < " + maxRepaintRequestWaitMs);
-                repaintRequestPending = true;
-                new Thread(new Runnable() {
-                    public void run() {
-                        try {
-                            Thread.sleep(Math.min(maxRepaintRequestWaitMs, Math.abs(maxRepaintRequestWaitMs - el)));
-                            EventQueue.invokeLater(new Runnable() {
-                                public void run() {
-                                    XRLog.general(Level.FINE, "--> running queued repaint request");
-                                    repaintRequested(doLayout);
-                                    repaintRequestPending = false;
-                                }
-                            });
-                        } catch (InterruptedException e) {
-                            // swallow
-                        }
-                    }
-                }).start();
-            } else {
-                pendingRepaintCount++;
-                XRLog.general("hmm... repaint request, but already have one");
+            repaintContent(dirty);
+        }
+    }
+
+    /**
+     * Repaints <code>area</code> of the document (all of it if
+     * <code>area</code> is null) after what is painted there has changed
+     * without a relayout.
+     */
+    protected void repaintContent(Rectangle area) {
+        if (area == null) {
+            repaint();
+        } else {
+            Rectangle dirty = new Rectangle(area);
+            if (enclosingScrollPane == null) {
+                Insets insets = getInsets();
+                dirty.translate(insets.left, insets.top);
             }
+            repaint(dirty);
         }
     }
 
+    /**
+     * Adds the boxes of the replaced elements in <code>box</code> to
+     * <code>result</code>, including those inside inline elements (e.g. an
+     * image in a link).
+     */
+    private static List<BlockBox> findReplacedBoxes(Box box, List<BlockBox> result) {
+        if (box instanceof BlockBox && ((BlockBox) box).getReplacedElement() != null) {
+            result.add((BlockBox) box);
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            findReplacedBoxes(box.getChild(i), result);
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    findReplacedBoxes((Box) child, result);
+                }
+            }
+        }
+        return result;
+    }
+
     public boolean isDefaultFontFromComponent() {
         return defaultFontFromComponent;
     }
@@ -60,7 +60,7 @@ public class SwingReplacedElement implements ReplacedElement {
     
     public void detach(LayoutContext c) {
         if (c.isInteractive()) {
-            ((RootPanel)c.getCanvas()).remove(getJComponent());
+            ((RootPanel)c.getCanvas()).removeLayoutComponent(c, getJComponent());
         }
     }
     
@@ -44,6 +44,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -125,7 +126,11 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
             result.setIntrinsicSize(formField.getIntrinsicSize());
 
             if (context.isInteractive()) {
-                ((Container) context.getCanvas()).add(cc);
+                if (context.getCanvas() instanceof RootPanel) {
+                    ((RootPanel) context.getCanvas()).addLayoutComponent(context, cc);
+                } else {
+                    ((Container) context.getCanvas()).add(cc);
+                }
             }
             return result;
         }
@@ -293,15 +298,58 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
     }
 
     public void remove(Element e) {
+        // An element's hash code changes with its attributes and parent, so
+        // the forms are copied rather than removed by key
         if (forms != null) {
-            forms.remove(e);
+            LinkedHashMap<Element, XhtmlForm> retained = new LinkedHashMap<Element, XhtmlForm>();
+            for (Map.Entry<Element, XhtmlForm> entry : forms.entrySet()) {
+                if (entry.getKey() != e) {
+                    retained.put(entry.getKey(), entry.getValue());
+                }
+            }
+            forms = retained;
         }
 
         if (imageComponents != null) {
-            imageComponents.remove(e);
+            for (Iterator<CacheKey> i = imageComponents.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().elem == e) {
+                    i.remove();
+                }
+            }
         }
     }
 
+    /**
+     * Removes the forms, form fields and images of elements that are no
+     * longer part of a document, e.g. after children have been removed from
+     * the document.
+     */
+    public void removeDetached() {
+        if (forms != null) {
+            LinkedHashMap<Element, XhtmlForm> retained = new LinkedHashMap<Element, XhtmlForm>();
+            for (Map.Entry<Element, XhtmlForm> entry : forms.entrySet()) {
+                // fields outside of a form are kept under null
+                if (entry.getKey() == null || entry.getKey().ownerDocument() != null) {
+                    entry.getValue().removeDetached();
+                    retained.put(entry.getKey(), entry.getValue());
+                }
+            }
+            forms = retained;
+        }
+
+        if (imageComponents != null) {
+            for (Iterator<CacheKey> i = imageComponents.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().elem.ownerDocument() == null) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    public ImageResourceLoader getImageResourceLoader() {
+        return imageResourceLoader;
+    }
+
     public void setFormSubmissionListener(FormSubmissionListener fsl) {
         this.formSubmissionListener = fsl;
     }
@@ -327,14 +375,15 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
 
             if (height != cacheKey.height) return false;
             if (width != cacheKey.width) return false;
-            if (!elem.equals(cacheKey.elem)) return false;
+            if (elem != cacheKey.elem) return false;
             if (!uri.equals(cacheKey.uri)) return false;
 
             return true;
         }
 
         public int hashCode() {
-            int result = elem.hashCode();
+            // Elements' own hash codes change with their attributes
+            int result = System.identityHashCode(elem);
             result = 31 * result + uri.hashCode();
             result = 31 * result + width;
             result = 31 * result + height;
@@ -0,0 +1,158 @@
+package com.github.danfickle.flyingsaucer.swing;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.layout.Layer;
+
+/**
+ * The painted document kept as fixed-size image tiles in document
+ * coordinates, so repainting an area that hasn't changed (e.g. while
+ * scrolling) is a copy of cached tiles. Tiles are rendered at the scale of
+ * the target graphics (e.g. 2 on HiDPI screens, or the zoom of a
+ * {@link ScalableXHTMLPanel}), so they are copied pixel for pixel; graphics
+ * that are rotated or sheared are painted directly. Tiles belong to one root
+ * layer and one scale and are discarded when either changes. The least
+ * recently used tiles are evicted once the memory budget is exceeded.
+ */
+final class TileCache {
+    static final int TILE_SIZE = 256;
+
+    /**
+     * Paints the document into a tile.
+     */
+    interface TilePainter {
+        /**
+         * Paints the area <code>bounds</code> of the document to
+         * <code>g</code>, which is translated and clipped accordingly.
+         */
+        void paintTile(Graphics2D g, Rectangle bounds);
+    }
+
+    private final int _maxBytes;
+    private int _maxTiles;
+    private final Map<Long, BufferedImage> _tiles;
+    private Layer _layer;
+    private double _scaleX = 1;
+    private double _scaleY = 1;
+
+    TileCache(int maxBytes) {
+        _maxBytes = maxBytes;
+        _maxTiles = Math.max(maxBytes / (TILE_SIZE * TILE_SIZE * 4), 1);
+        _tiles = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                return size() > _maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Paints the area <code>clip</code> of the document laid out as
+     * <code>layer</code> to <code>g</code>, painting missing tiles with
+     * <code>painter</code>. Opaque tiles must be filled completely by the
+     * painter.
+     */
+    void paint(Graphics2D g, Rectangle clip, Layer layer, boolean opaque, TilePainter painter) {
+        AffineTransform transform = g.getTransform();
+        if (transform.getShearX() != 0 || transform.getShearY() != 0 ||
+                transform.getScaleX() <= 0 || transform.getScaleY() <= 0) {
+            painter.paintTile(g, clip);
+            return;
+        }
+
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        if (layer != _layer || scaleX != _scaleX || scaleY != _scaleY) {
+            _tiles.clear();
+            _layer = layer;
+            _scaleX = scaleX;
+            _scaleY = scaleY;
+            int tileBytes = (int) Math.ceil(TILE_SIZE * scaleX) * (int) Math.ceil(TILE_SIZE * scaleY) * 4;
+            _maxTiles = Math.max(_maxBytes / tileBytes, 1);
+        }
+
+        int firstCol = floorDiv(clip.x);
+        int lastCol = floorDiv(clip.x + clip.width - 1);
+        int firstRow = floorDiv(clip.y);
+        int lastRow = floorDiv(clip.y + clip.height - 1);
+
+        // Tiles are drawn in device space, at device pixel boundaries
+        // (rounded, so adjacent tiles neither overlap nor leave gaps)
+        g.setTransform(AffineTransform.getTranslateInstance(
+                Math.round(transform.getTranslateX()), Math.round(transform.getTranslateY())));
+        try {
+            for (int row = firstRow; row <= lastRow; row++) {
+                int y0 = deviceCoord(row, scaleY);
+                int y1 = deviceCoord(row + 1, scaleY);
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int x0 = deviceCoord(col, scaleX);
+                    int x1 = deviceCoord(col + 1, scaleX);
+
+                    Long key = key(col, row);
+                    BufferedImage tile = _tiles.get(key);
+                    if (tile == null) {
+                        tile = g.getDeviceConfiguration().createCompatibleImage(
+                                x1 - x0, y1 - y0, opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+
+                        Rectangle bounds = new Rectangle(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                        Graphics2D tg = tile.createGraphics();
+                        try {
+                            tg.setRenderingHints(g.getRenderingHints());
+                            tg.translate(-x0, -y0);
+                            tg.scale(scaleX, scaleY);
+                            tg.clip(bounds);
+                            painter.paintTile(tg, bounds);
+                        } finally {
+                            tg.dispose();
+                        }
+                        _tiles.put(key, tile);
+                    }
+                    g.drawImage(tile, x0, y0, null);
+                }
+            }
+        } finally {
+            g.setTransform(transform);
+        }
+    }
+
+    private static int deviceCoord(int tile, double scale) {
+        return (int) Math.round(tile * TILE_SIZE * scale);
+    }
+
+    /**
+     * Discards all tiles.
+     */
+    void invalidate() {
+        _tiles.clear();
+    }
+
+    /**
+     * Discards the tiles that intersect <code>area</code>.
+     */
+    void invalidate(Rectangle area) {
+        for (Iterator<Long> i = _tiles.keySet().iterator(); i.hasNext(); ) {
+            long key = i.next().longValue();
+            Rectangle bounds = new Rectangle(
+                    (int) (key >> 32) * TILE_SIZE, (int) key * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            if (bounds.intersects(area)) {
+                i.remove();
+            }
+        }
+    }
+
+    private static int floorDiv(int coord) {
+        return coord >= 0 ? coord / TILE_SIZE : -((-coord + TILE_SIZE - 1) / TILE_SIZE);
+    }
+
+    private static Long key(int col, int row) {
+        return Long.valueOf(((long) col << 32) | (row & 0xffffffffL));
+    }
+}